@@ -0,0 +1,344 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link EventExecutor}s for {@link EventHandler} methods.<br/>
+ * Where possible a small {@link EventHandlerInvoker} class is generated which calls the handler method directly,
+ * avoiding the reflection, argument array and access checks of {@link Method#invoke(Object, Object...)} on every event.<br/>
+ * Handler methods which can not be linked from another class loader (non-public methods or classes) fall back to reflection.
+ */
+final class EventExecutorGenerator {
+	private static final Logger LOGGER = Logger.getLogger(EventExecutorGenerator.class.getCanonicalName());
+	private static final String INVOKER_PACKAGE = "org/spout/api/event/generated/";
+	private static final AtomicInteger ID_COUNTER = new AtomicInteger();
+	private static volatile boolean enabled = true;
+	private static final byte CONSTANT_UTF8 = 1;
+	private static final byte CONSTANT_CLASS = 7;
+	private static final byte CONSTANT_METHODREF = 10;
+	private static final byte CONSTANT_NAME_AND_TYPE = 12;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+	private static final int ALOAD_0 = 0x2A;
+	private static final int ALOAD_1 = 0x2B;
+	private static final int ALOAD_2 = 0x2C;
+	private static final int POP = 0x57;
+	private static final int POP2 = 0x58;
+	private static final int RETURN = 0xB1;
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+	private static final int INVOKESTATIC = 0xB8;
+	private static final int CHECKCAST = 0xC0;
+	private static final Map<Class<?>, Character> PRIMITIVE_DESCRIPTORS = new HashMap<Class<?>, Character>();
+
+	static {
+		PRIMITIVE_DESCRIPTORS.put(void.class, 'V');
+		PRIMITIVE_DESCRIPTORS.put(boolean.class, 'Z');
+		PRIMITIVE_DESCRIPTORS.put(byte.class, 'B');
+		PRIMITIVE_DESCRIPTORS.put(char.class, 'C');
+		PRIMITIVE_DESCRIPTORS.put(short.class, 'S');
+		PRIMITIVE_DESCRIPTORS.put(int.class, 'I');
+		PRIMITIVE_DESCRIPTORS.put(long.class, 'J');
+		PRIMITIVE_DESCRIPTORS.put(float.class, 'F');
+		PRIMITIVE_DESCRIPTORS.put(double.class, 'D');
+	}
+
+	private EventExecutorGenerator() {
+	}
+
+	/**
+	 * Sets whether invoker classes should be generated. When disabled all executors use reflection.
+	 * @param enabled true to generate invokers
+	 */
+	static void setEnabled(boolean enabled) {
+		EventExecutorGenerator.enabled = enabled;
+	}
+
+	/**
+	 * Creates an executor which calls the given handler method
+	 * @param listener the listener which owns the method
+	 * @param method the handler method, which must take a single {@link Event} parameter
+	 * @return the executor
+	 */
+	static EventExecutor create(Object listener, Method method) {
+		if (enabled && canGenerate(method)) {
+			try {
+				return new GeneratedEventExecutor(listener, method.getParameterTypes()[0], generateInvoker(method));
+			} catch (Throwable t) {
+				LOGGER.log(Level.FINE, "Unable to generate event invoker for " + method + ", falling back to reflection", t);
+			}
+		}
+		return new ReflectedEventExecutor(listener, method);
+	}
+
+	/**
+	 * Checks if a generated class in another class loader is able to call the given method
+	 * @param method to check
+	 * @return true if an invoker can be generated
+	 */
+	static boolean canGenerate(Method method) {
+		return Modifier.isPublic(method.getModifiers()) && isPublic(method.getDeclaringClass()) && isPublic(method.getParameterTypes()[0]);
+	}
+
+	private static boolean isPublic(Class<?> clazz) {
+		for (Class<?> c = clazz; c != null; c = c.getDeclaringClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Generates and instantiates an invoker for the given method
+	 * @param method the handler method
+	 * @return the invoker
+	 * @throws Exception if the class could not be defined
+	 */
+	static EventHandlerInvoker generateInvoker(Method method) throws Exception {
+		String className = INVOKER_PACKAGE + "EventHandlerInvoker$" + ID_COUNTER.incrementAndGet();
+		byte[] bytes = generateClass(className, method);
+		ClassLoader parent = method.getDeclaringClass().getClassLoader();
+		if (parent == null) {
+			parent = EventHandlerInvoker.class.getClassLoader();
+		}
+		InvokerClassLoader loader = new InvokerClassLoader(parent);
+		Class<?> clazz = loader.define(className.replace('/', '.'), bytes);
+		return clazz.asSubclass(EventHandlerInvoker.class).newInstance();
+	}
+
+	/**
+	 * Writes the class file for an invoker equivalent to:
+	 * <pre>
+	 * public final class Name implements EventHandlerInvoker {
+	 * 	public void invoke(Object listener, Event event) {
+	 * 		((Owner) listener).method((Param) event);
+	 * 	}
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String className, Method method) throws IOException {
+		final boolean isStatic = Modifier.isStatic(method.getModifiers());
+		final Class<?> returnType = method.getReturnType();
+		final String owner = getInternalName(method.getDeclaringClass());
+		final String param = getInternalName(method.getParameterTypes()[0]);
+
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classInfo(className);
+		int superClass = pool.classInfo("java/lang/Object");
+		int invokerInterface = pool.classInfo(getInternalName(EventHandlerInvoker.class));
+		int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+		int ownerClass = pool.classInfo(owner);
+		int paramClass = pool.classInfo(param);
+		int handler = pool.methodRef(owner, method.getName(), "(" + getDescriptor(method.getParameterTypes()[0]) + ")" + getDescriptor(returnType));
+		int initName = pool.utf8("<init>");
+		int initDesc = pool.utf8("()V");
+		int invokeName = pool.utf8("invoke");
+		int invokeDesc = pool.utf8("(Ljava/lang/Object;" + getDescriptor(Event.class) + ")V");
+		int code = pool.utf8("Code");
+
+		// Constructor, calls super()
+		ByteArrayOutputStream initCode = new ByteArrayOutputStream();
+		initCode.write(ALOAD_0);
+		initCode.write(INVOKESPECIAL);
+		writeShort(initCode, objectInit);
+		initCode.write(RETURN);
+
+		// invoke(Object, Event)
+		ByteArrayOutputStream invokeCode = new ByteArrayOutputStream();
+		if (!isStatic) {
+			invokeCode.write(ALOAD_1);
+			invokeCode.write(CHECKCAST);
+			writeShort(invokeCode, ownerClass);
+		}
+		invokeCode.write(ALOAD_2);
+		invokeCode.write(CHECKCAST);
+		writeShort(invokeCode, paramClass);
+		invokeCode.write(isStatic ? INVOKESTATIC : INVOKEVIRTUAL);
+		writeShort(invokeCode, handler);
+		if (returnType == long.class || returnType == double.class) {
+			invokeCode.write(POP2);
+		} else if (returnType != void.class) {
+			invokeCode.write(POP);
+		}
+		invokeCode.write(RETURN);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0); // minor version
+		out.writeShort(50); // major version, Java 6
+		pool.write(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1); // interfaces
+		out.writeShort(invokerInterface);
+		out.writeShort(0); // fields
+		out.writeShort(2); // methods
+		writeMethod(out, initName, initDesc, code, 1, 1, initCode.toByteArray());
+		writeMethod(out, invokeName, invokeDesc, code, 2, 3, invokeCode.toByteArray());
+		out.writeShort(0); // attributes
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(ACC_PUBLIC);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1); // attributes
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write((value >> 8) & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+	private static String getInternalName(Class<?> clazz) {
+		return clazz.getName().replace('.', '/');
+	}
+
+	private static String getDescriptor(Class<?> clazz) {
+		if (clazz.isPrimitive()) {
+			return String.valueOf(PRIMITIVE_DESCRIPTORS.get(clazz));
+		} else if (clazz.isArray()) {
+			return getInternalName(clazz);
+		}
+		return "L" + getInternalName(clazz) + ";";
+	}
+
+	/**
+	 * A minimal class file constant pool, containing only the entry types needed by the invoker
+	 */
+	private static final class ConstantPool {
+		private final List<byte[]> entries = new ArrayList<byte[]>();
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+		public int utf8(String value) {
+			String key = "U" + value;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				try {
+					out.writeByte(CONSTANT_UTF8);
+					out.writeUTF(value);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				index = add(key, bytes.toByteArray());
+			}
+			return index;
+		}
+
+		public int classInfo(String internalName) {
+			String key = "C" + internalName;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				index = add(key, new byte[] {CONSTANT_CLASS, hi(utf8(internalName)), lo(utf8(internalName))});
+			}
+			return index;
+		}
+
+		public int methodRef(String owner, String name, String descriptor) {
+			String key = "M" + owner + "." + name + descriptor;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				int ownerIndex = classInfo(owner);
+				int nameAndType = nameAndType(name, descriptor);
+				index = add(key, new byte[] {CONSTANT_METHODREF, hi(ownerIndex), lo(ownerIndex), hi(nameAndType), lo(nameAndType)});
+			}
+			return index;
+		}
+
+		private int nameAndType(String name, String descriptor) {
+			String key = "N" + name + ":" + descriptor;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				index = add(key, new byte[] {CONSTANT_NAME_AND_TYPE, hi(nameIndex), lo(nameIndex), hi(descriptorIndex), lo(descriptorIndex)});
+			}
+			return index;
+		}
+
+		private int add(String key, byte[] entry) {
+			entries.add(entry);
+			int index = entries.size();
+			indexes.put(key, index);
+			return index;
+		}
+
+		public void write(DataOutputStream out) throws IOException {
+			out.writeShort(entries.size() + 1);
+			for (byte[] entry : entries) {
+				out.write(entry);
+			}
+		}
+
+		private static byte hi(int value) {
+			return (byte) (value >> 8);
+		}
+
+		private static byte lo(int value) {
+			return (byte) value;
+		}
+	}
+
+	private static final class InvokerClassLoader extends ClassLoader {
+		public InvokerClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -38,4 +38,13 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface EventHandler {
 	Order order() default Order.DEFAULT;
+
+	/**
+	 * Marks the handler as safe to run in parallel with other regions.<br/>
+	 * For {@link RegionBoundEvent}s, region parallel handlers are not called by the thread which raised the event.
+	 * Instead the event is queued and passed to the handler on the thread of the region it was raised in,
+	 * after all normal handlers have run. The handler can not affect the outcome seen by the caller of the event.<br/>
+	 * Events which are not bound to a region are passed to the handler as normal.
+	 */
+	boolean regionParallel() default false;
 }
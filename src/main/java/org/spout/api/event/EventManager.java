@@ -37,12 +37,33 @@ public interface EventManager {
 	 */
 	public <T extends Event> T callEvent(T event);
 
+	/**
+	 * Calls an event created by the given factory, only if the handler list has listeners.<br/>
+	 * This allows hot code paths to avoid constructing events which nobody listens for.
+	 * @param handlers the handler list of the event type created by the factory
+	 * @param factory to create the event
+	 * @return the called event, or null if there were no listeners and the event was not created
+	 */
+	public <T extends Event> T callEvent(HandlerList handlers, EventFactory<T> factory);
+
 	/**
 	 * Calls an event with the given details, on the next tick
 	 * @param event Event details
 	 */
 	public <T extends Event> void callDelayedEvent(T event);
 
+	/**
+	 * Gets the profiler which is recording listener timings
+	 * @return the profiler, or null if profiling is disabled
+	 */
+	public EventProfiler getProfiler();
+
+	/**
+	 * Sets the profiler to record listener timings with
+	 * @param profiler to use, or null to disable profiling
+	 */
+	public void setProfiler(EventProfiler profiler);
+
 	/**
 	 * Registers all the events in the given listener class
 	 * @param listener Listener to register
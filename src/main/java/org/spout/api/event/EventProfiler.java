@@ -0,0 +1,296 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long each {@link ListenerRegistration} takes to handle each event type.<br/>
+ * <br/>
+ * A profiler is enabled by passing it to {@link EventManager#setProfiler(EventProfiler)}. With a sample interval of n,
+ * only every n-th event call is timed, which keeps the overhead low enough to leave enabled on a live server.
+ * The recorded values can be exported at any time with {@link #getSnapshot()}.<br/>
+ * <br/>
+ * Listeners are only weakly referenced, so the values of a listener are dropped once it is unregistered and collected.
+ */
+public class EventProfiler {
+	private final ConcurrentMap<TimingKey, Timings> timings = new ConcurrentHashMap<TimingKey, Timings>();
+	private final ReferenceQueue<ListenerRegistration> collected = new ReferenceQueue<ListenerRegistration>();
+	private final int sampleInterval;
+	private final boolean trackAllocations;
+	/**
+	 * Not atomic, lost updates only shift which calls are sampled
+	 */
+	private int sampleCounter = 0;
+
+	/**
+	 * Creates a profiler which times every event call and does not track allocations
+	 */
+	public EventProfiler() {
+		this(1, false);
+	}
+
+	/**
+	 * Creates a profiler
+	 * @param sampleInterval the interval between timed event calls, 1 to time every call
+	 * @param trackAllocations true to also record the bytes allocated by listeners, if supported by the JVM
+	 */
+	public EventProfiler(int sampleInterval, boolean trackAllocations) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException("Sample interval must be at least 1");
+		}
+		this.sampleInterval = sampleInterval;
+		this.trackAllocations = trackAllocations && isAllocationTrackingSupported();
+	}
+
+	private static boolean isAllocationTrackingSupported() {
+		try {
+			return AllocationCounter.isSupported();
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the interval between timed event calls
+	 * @return the sample interval
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets if the bytes allocated by listeners are recorded
+	 * @return true if allocations are tracked
+	 */
+	public boolean isTrackingAllocations() {
+		return trackAllocations;
+	}
+
+	/**
+	 * Determines if the next event call should be timed
+	 * @return true to time the call
+	 */
+	public boolean sample() {
+		if (sampleInterval == 1) {
+			return true;
+		}
+		int count = sampleCounter + 1;
+		if (count >= sampleInterval) {
+			sampleCounter = 0;
+			return true;
+		}
+		sampleCounter = count;
+		return false;
+	}
+
+	/**
+	 * Gets the bytes allocated so far by the current thread, if allocations are tracked
+	 * @return the allocated bytes, or 0
+	 */
+	long getAllocatedBytes() {
+		return trackAllocations ? AllocationCounter.getAllocatedBytes() : 0;
+	}
+
+	/**
+	 * Records a single timed listener call
+	 * @param listener the listener which was called
+	 * @param eventClass the class of the event passed to the listener
+	 * @param nanos the time the call took
+	 * @param allocated the bytes allocated during the call
+	 * @param failed true if the listener threw an exception
+	 */
+	public void record(ListenerRegistration listener, Class<? extends Event> eventClass, long nanos, long allocated, boolean failed) {
+		Timings entry = timings.get(new TimingKey(listener, eventClass));
+		if (entry == null) {
+			removeCollected();
+			entry = new Timings();
+			Timings previous = timings.putIfAbsent(new TimingKey(listener, eventClass, collected), entry);
+			if (previous != null) {
+				entry = previous;
+			}
+		}
+		entry.record(nanos, allocated, failed);
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		timings.clear();
+	}
+
+	/**
+	 * Gets a copy of the values recorded so far, one entry per listener and event class
+	 * @return the snapshot
+	 */
+	public List<ListenerTimings> getSnapshot() {
+		removeCollected();
+		List<ListenerTimings> snapshot = new ArrayList<ListenerTimings>(timings.size());
+		for (Map.Entry<TimingKey, Timings> e : timings.entrySet()) {
+			Timings t = e.getValue();
+			ListenerRegistration listener = e.getKey().getListener();
+			if (listener == null) {
+				continue;
+			}
+			snapshot.add(new ListenerTimings(listener.getOwner(), e.getKey().eventClass, listener.getOrder(), sampleInterval,
+					t.invocations.get(), t.totalNanos.get(), t.maxNanos.get(), t.exceptions.get(), t.allocatedBytes.get()));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Removes the values of listeners which have been collected
+	 */
+	private void removeCollected() {
+		Reference<? extends ListenerRegistration> reference;
+		while ((reference = collected.poll()) != null) {
+			timings.remove(((ListenerReference) reference).key);
+		}
+	}
+
+	/**
+	 * Identifies a listener and event class. Keys stored in the map reference the listener weakly, keys only used for
+	 * lookups reference it directly.
+	 */
+	private static class TimingKey {
+		private final ListenerRegistration listener;
+		private final ListenerReference reference;
+		private final Class<? extends Event> eventClass;
+		private final int hash;
+
+		public TimingKey(ListenerRegistration listener, Class<? extends Event> eventClass) {
+			this.listener = listener;
+			this.reference = null;
+			this.eventClass = eventClass;
+			this.hash = System.identityHashCode(listener) * 31 + eventClass.hashCode();
+		}
+
+		public TimingKey(ListenerRegistration listener, Class<? extends Event> eventClass, ReferenceQueue<ListenerRegistration> queue) {
+			this.listener = null;
+			this.reference = new ListenerReference(listener, queue, this);
+			this.eventClass = eventClass;
+			this.hash = System.identityHashCode(listener) * 31 + eventClass.hashCode();
+		}
+
+		public ListenerRegistration getListener() {
+			return reference == null ? listener : reference.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			} else if (!(o instanceof TimingKey)) {
+				return false;
+			}
+			TimingKey other = (TimingKey) o;
+			ListenerRegistration listener = getListener();
+			return listener != null && other.getListener() == listener && other.eventClass == eventClass;
+		}
+	}
+
+	private static class ListenerReference extends WeakReference<ListenerRegistration> {
+		private final TimingKey key;
+
+		public ListenerReference(ListenerRegistration listener, ReferenceQueue<ListenerRegistration> queue, TimingKey key) {
+			super(listener, queue);
+			this.key = key;
+		}
+	}
+
+	private static class Timings {
+		private final AtomicLong invocations = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong exceptions = new AtomicLong();
+		private final AtomicLong allocatedBytes = new AtomicLong();
+
+		public void record(long nanos, long allocated, boolean failed) {
+			invocations.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			allocatedBytes.addAndGet(allocated);
+			if (failed) {
+				exceptions.incrementAndGet();
+			}
+			long max;
+			while ((max = maxNanos.get()) < nanos) {
+				if (maxNanos.compareAndSet(max, nanos)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads per-thread allocation counters, which are only available on HotSpot based JVMs
+	 */
+	private static class AllocationCounter {
+		private static final com.sun.management.ThreadMXBean BEAN;
+
+		static {
+			com.sun.management.ThreadMXBean bean = null;
+			try {
+				ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+				if (threadBean instanceof com.sun.management.ThreadMXBean) {
+					bean = (com.sun.management.ThreadMXBean) threadBean;
+					if (bean.isThreadAllocatedMemorySupported()) {
+						bean.setThreadAllocatedMemoryEnabled(true);
+					} else {
+						bean = null;
+					}
+				}
+			} catch (Throwable t) {
+				bean = null;
+			}
+			BEAN = bean;
+		}
+
+		public static boolean isSupported() {
+			return BEAN != null;
+		}
+
+		public static long getAllocatedBytes() {
+			return BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+}
@@ -196,6 +196,15 @@ public final class HandlerList {
 		return handlers;
 	}
 
+	/**
+	 * Checks if any listeners, including those of parent handler lists, are registered.<br/>
+	 * This is cheap enough to be checked before constructing an event on hot code paths.
+	 * @return true if calling an event with this handler list would call at least one listener
+	 */
+	public boolean hasListeners() {
+		return getRegisteredListeners().length > 0;
+	}
+
 	protected void addChild(HandlerList handlerList) {
 		children.add(handlerList);
 	}
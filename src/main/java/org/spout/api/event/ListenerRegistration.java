@@ -33,6 +33,7 @@ public class ListenerRegistration {
 	private final EventExecutor executor;
 	private final Order orderSlot;
 	private final Object owner;
+	private final boolean regionParallel;
 
 	/**
 	 * @param executor Listener this registration represents
@@ -40,9 +41,20 @@ public class ListenerRegistration {
 	 * @param owner object that created this registration
 	 */
 	public ListenerRegistration(final EventExecutor executor, final Order orderSlot, final Object owner) {
+		this(executor, orderSlot, owner, false);
+	}
+
+	/**
+	 * @param executor Listener this registration represents
+	 * @param orderSlot Order position this registration is in
+	 * @param owner object that created this registration
+	 * @param regionParallel true if {@link RegionBoundEvent}s should be passed to this listener on the region's thread
+	 */
+	public ListenerRegistration(final EventExecutor executor, final Order orderSlot, final Object owner, final boolean regionParallel) {
 		this.executor = executor;
 		this.orderSlot = orderSlot;
 		this.owner = owner;
+		this.regionParallel = regionParallel;
 	}
 
 	/**
@@ -68,4 +80,13 @@ public class ListenerRegistration {
 	public Order getOrder() {
 		return orderSlot;
 	}
+
+	/**
+	 * Gets if this registration is called on the region's thread for {@link RegionBoundEvent}s
+	 * @return true if region parallel
+	 * @see EventHandler#regionParallel()
+	 */
+	public boolean isRegionParallel() {
+		return regionParallel;
+	}
 }
@@ -0,0 +1,156 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+/**
+ * An immutable snapshot of the values recorded by an {@link EventProfiler} for one listener and event class.
+ */
+public class ListenerTimings {
+	private final Object owner;
+	private final Class<? extends Event> eventClass;
+	private final Order order;
+	private final int sampleInterval;
+	private final long invocations;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long exceptions;
+	private final long allocatedBytes;
+
+	public ListenerTimings(Object owner, Class<? extends Event> eventClass, Order order, int sampleInterval, long invocations, long totalNanos, long maxNanos, long exceptions, long allocatedBytes) {
+		this.owner = owner;
+		this.eventClass = eventClass;
+		this.order = order;
+		this.sampleInterval = sampleInterval;
+		this.invocations = invocations;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.exceptions = exceptions;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * Gets the owner of the listener, usually a plugin
+	 * @return the owner
+	 */
+	public Object getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets the class of the events passed to the listener
+	 * @return the event class
+	 */
+	public Class<? extends Event> getEventClass() {
+		return eventClass;
+	}
+
+	/**
+	 * Gets the order slot the listener is registered in
+	 * @return the order
+	 */
+	public Order getOrder() {
+		return order;
+	}
+
+	/**
+	 * Gets the sample interval of the profiler, the recorded values cover one in this many calls
+	 * @return the sample interval
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets the number of timed calls
+	 * @return the number of sampled invocations
+	 */
+	public long getInvocations() {
+		return invocations;
+	}
+
+	/**
+	 * Gets the estimated total number of calls, including the ones which were not sampled
+	 * @return the estimated invocations
+	 */
+	public long getEstimatedInvocations() {
+		return invocations * sampleInterval;
+	}
+
+	/**
+	 * Gets the total time spent in the timed calls
+	 * @return the total time in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the estimated total time spent in the listener, including the calls which were not sampled
+	 * @return the estimated total time in nanoseconds
+	 */
+	public long getEstimatedTotalNanos() {
+		return totalNanos * sampleInterval;
+	}
+
+	/**
+	 * Gets the average time of a single call
+	 * @return the average time in nanoseconds
+	 */
+	public long getAverageNanos() {
+		return invocations == 0 ? 0 : totalNanos / invocations;
+	}
+
+	/**
+	 * Gets the longest single timed call
+	 * @return the maximum time in nanoseconds
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Gets the number of timed calls which threw an exception
+	 * @return the number of exceptions
+	 */
+	public long getExceptions() {
+		return exceptions;
+	}
+
+	/**
+	 * Gets the bytes allocated during the timed calls, or 0 if allocations are not tracked
+	 * @return the allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		String ownerName = owner == null ? "null" : owner.getClass().getSimpleName();
+		return ownerName + " " + eventClass.getSimpleName() + " (" + order + "): calls=" + invocations + ", total=" + totalNanos + "ns, max=" + maxNanos + "ns, exceptions=" + exceptions + ", allocated=" + allocatedBytes + "B, sampleInterval=" + sampleInterval;
+	}
+}
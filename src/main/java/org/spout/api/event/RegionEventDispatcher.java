@@ -0,0 +1,126 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.scheduler.TaskManager;
+import org.spout.api.scheduler.TaskPriority;
+
+/**
+ * Queues {@link RegionBoundEvent}s for {@link EventHandler#regionParallel() region parallel} listeners.<br/>
+ * <br/>
+ * Each region has a queue which is drained by a single task on the region's {@link TaskManager}, so all events raised
+ * in a region during a tick are delivered in one batch at the start of the region's next tick, in parallel with other regions.
+ */
+final class RegionEventDispatcher {
+	private final SimpleEventManager manager;
+	private final Map<Region, RegionQueue> queues = Collections.synchronizedMap(new WeakHashMap<Region, RegionQueue>());
+
+	RegionEventDispatcher(SimpleEventManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Queues an event to be passed to the given listeners on the region's thread
+	 * @param region the region the event was raised in
+	 * @param event the event
+	 * @param listeners the region parallel listeners, in call order
+	 */
+	public void queue(Region region, Event event, List<ListenerRegistration> listeners) {
+		RegionQueue queue;
+		synchronized (queues) {
+			queue = queues.get(region);
+			if (queue == null) {
+				queue = new RegionQueue(manager);
+				queues.put(region, queue);
+			}
+		}
+		queue.add(new PendingEvent(event, listeners));
+		if (queue.scheduled.compareAndSet(false, true)) {
+			region.getTaskManager().scheduleSyncDelayedTask(null, queue, TaskPriority.CRITICAL);
+		}
+	}
+
+	/**
+	 * Gets the number of events waiting to be dispatched for a region
+	 * @param region the region
+	 * @return the number of queued events
+	 */
+	public int getQueuedCount(Region region) {
+		RegionQueue queue = queues.get(region);
+		return queue == null ? 0 : queue.size();
+	}
+
+	/**
+	 * The pending events for a region. This must not reference the region, so that unloaded regions can be collected.
+	 */
+	@SuppressWarnings("serial")
+	private static class RegionQueue extends ConcurrentLinkedQueue<PendingEvent> implements Runnable {
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		private final SimpleEventManager manager;
+
+		public RegionQueue(SimpleEventManager manager) {
+			this.manager = manager;
+		}
+
+		@Override
+		public void run() {
+			scheduled.set(false);
+			PendingEvent pending;
+			while ((pending = poll()) != null) {
+				pending.dispatch(manager);
+			}
+		}
+	}
+
+	private static class PendingEvent {
+		private final Event event;
+		private final ListenerRegistration[] listeners;
+
+		public PendingEvent(Event event, List<ListenerRegistration> listeners) {
+			this.event = event;
+			this.listeners = listeners.toArray(new ListenerRegistration[listeners.size()]);
+		}
+
+		public void dispatch(SimpleEventManager manager) {
+			EventProfiler profiler = manager.getProfiler();
+			if (profiler != null && !profiler.sample()) {
+				profiler = null;
+			}
+			for (ListenerRegistration listener : listeners) {
+				manager.execute(listener, event, profiler);
+			}
+		}
+	}
+}
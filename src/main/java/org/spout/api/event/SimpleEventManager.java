@@ -26,7 +26,6 @@
  */
 package org.spout.api.event;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -39,14 +38,17 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.spout.api.Spout;
-import org.spout.api.exception.EventException;
 import org.spout.api.exception.IllegalPluginAccessException;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * A simple implementation of the {@link EventManager} that handles all {@link Event}s for the engine.
  */
 public class SimpleEventManager implements EventManager {
 	private static final Logger LOGGER = Logger.getLogger(SimpleEventManager.class.getCanonicalName());
+	private final RegionEventDispatcher regionDispatcher = new RegionEventDispatcher(this);
+	private volatile EventProfiler profiler = null;
+
 	@Override
 	public <T extends Event> void callDelayedEvent(final T event) {
 		Spout.getEngine().getScheduler().scheduleSyncDelayedTask(null, new Runnable() {
@@ -63,20 +65,87 @@ public class SimpleEventManager implements EventManager {
 		ListenerRegistration[] listeners = handlers.getRegisteredListeners();
 
 		if (listeners != null) {
+			EventProfiler profiler = this.profiler;
+			if (profiler != null && !profiler.sample()) {
+				profiler = null;
+			}
+			Region region = null;
+			List<ListenerRegistration> regionListeners = null;
 			for (ListenerRegistration listener : listeners) {
-				try {
-					if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
-						listener.getExecutor().execute(event);
+				if (listener.isRegionParallel() && event instanceof RegionBoundEvent) {
+					if (regionListeners == null) {
+						region = ((RegionBoundEvent) event).getRegion();
+						regionListeners = new ArrayList<ListenerRegistration>(2);
+					}
+					if (region != null) {
+						regionListeners.add(listener);
+						continue;
 					}
-				} catch (Throwable ex) {
-					LOGGER.log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
 				}
+				execute(listener, event, profiler);
 			}
 			event.setHasBeenCalled(true);
+			if (regionListeners != null && !regionListeners.isEmpty()) {
+				regionDispatcher.queue(region, event, regionListeners);
+			}
 		}
 		return event;
 	}
 
+	/**
+	 * Passes an event to a single listener, if the listener accepts the event's cancellation state
+	 * @param listener to call
+	 * @param event to pass
+	 * @param profiler to record the call with, or null if the call should not be timed
+	 */
+	void execute(ListenerRegistration listener, Event event, EventProfiler profiler) {
+		if (event.isCancelled() && !listener.getOrder().ignoresCancelled()) {
+			return;
+		}
+		if (profiler == null) {
+			try {
+				listener.getExecutor().execute(event);
+			} catch (Throwable ex) {
+				logFailure(listener, event, ex);
+			}
+			return;
+		}
+		boolean failed = false;
+		long allocated = profiler.getAllocatedBytes();
+		long start = System.nanoTime();
+		try {
+			listener.getExecutor().execute(event);
+		} catch (Throwable ex) {
+			failed = true;
+			logFailure(listener, event, ex);
+		} finally {
+			long nanos = System.nanoTime() - start;
+			profiler.record(listener, event.getClass(), nanos, profiler.getAllocatedBytes() - allocated, failed);
+		}
+	}
+
+	private void logFailure(ListenerRegistration listener, Event event, Throwable ex) {
+		LOGGER.log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
+	}
+
+	@Override
+	public <T extends Event> T callEvent(HandlerList handlers, EventFactory<T> factory) {
+		if (!handlers.hasListeners()) {
+			return null;
+		}
+		return callEvent(factory.createEvent());
+	}
+
+	@Override
+	public EventProfiler getProfiler() {
+		return profiler;
+	}
+
+	@Override
+	public void setProfiler(EventProfiler profiler) {
+		this.profiler = profiler;
+	}
+
 	@Override
 	public void registerEvents(Listener listener, Object owner) {
 		for (Map.Entry<Class<? extends Event>, Set<ListenerRegistration>> entry : createRegisteredListeners(listener, owner).entrySet()) {
@@ -154,31 +223,12 @@ public class SimpleEventManager implements EventManager {
 
 			eventClass = checkClass.asSubclass(Event.class);
 
-			method.setAccessible(true);
 			Set<ListenerRegistration> eventSet = ret.get(eventClass);
 			if (eventSet == null) {
 				eventSet = new HashSet<ListenerRegistration>();
 				ret.put(eventClass, eventSet);
 			}
-			eventSet.add(new ListenerRegistration(new EventExecutor() {
-				@Override
-				public void execute(Event event) throws EventException {
-					try {
-						if (!checkClass.isAssignableFrom(event.getClass())) {
-							throw new EventException("Wrong event type passed to registered method");
-						}
-						method.invoke(listener, event);
-					} catch (InvocationTargetException e) {
-						if (e.getCause() instanceof EventException) {
-							throw (EventException) e.getCause();
-						}
-
-						throw new EventException(e.getCause());
-					} catch (Throwable t) {
-						throw new EventException(t);
-					}
-				}
-			}, eh.order(), plugin));
+			eventSet.add(new ListenerRegistration(EventExecutorGenerator.create(listener, method), eh.order(), plugin, eh.regionParallel()));
 		}
 		return ret;
 	}
@@ -0,0 +1,175 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event.block;
+
+import java.util.Arrays;
+
+import org.spout.api.event.EventManager;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.block.BlockFullState;
+
+/**
+ * Collects the block changes made in a single {@link Chunk} so they can be delivered as one {@link BlockChangeBatchEvent}.<br/>
+ * <br/>
+ * The engine adds changes as they are made and calls {@link #flush(EventManager, int)} at the end of each tick stage.
+ * Collection is opt-in: {@link #isEnabled()} is only true when a listener is registered for the batch event.<br/>
+ * <br/>
+ * A batch is not thread safe and should only be used by the thread which owns the chunk.
+ */
+public class BlockChangeBatch {
+	private static final int COORDINATE_BITS = Chunk.BLOCKS.BITS;
+	private static final int COORDINATE_MASK = Chunk.BLOCKS.MASK;
+	private static final int INITIAL_SIZE = 16;
+	private final Chunk chunk;
+	private int count = 0;
+	private short[] coordinates = new short[INITIAL_SIZE];
+	private int[] oldStates = new int[INITIAL_SIZE];
+	private int[] newStates = new int[INITIAL_SIZE];
+
+	public BlockChangeBatch(Chunk chunk) {
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Gets if changes should be collected, which is only the case when a listener is registered for {@link BlockChangeBatchEvent}
+	 * @return true if changes should be added
+	 */
+	public static boolean isEnabled() {
+		return BlockChangeBatchEvent.getHandlerList().hasListeners();
+	}
+
+	/**
+	 * Gets the chunk this batch collects changes for
+	 * @return the chunk
+	 */
+	public Chunk getChunk() {
+		return chunk;
+	}
+
+	/**
+	 * Adds a block change
+	 * @param x coordinate of the block, only the chunk-relative bits are used
+	 * @param y coordinate of the block, only the chunk-relative bits are used
+	 * @param z coordinate of the block, only the chunk-relative bits are used
+	 * @param oldId the id of the block before the change
+	 * @param oldData the data of the block before the change
+	 * @param newId the id of the block after the change
+	 * @param newData the data of the block after the change
+	 */
+	public void add(int x, int y, int z, short oldId, short oldData, short newId, short newData) {
+		if (count == coordinates.length) {
+			int newLength = count << 1;
+			coordinates = Arrays.copyOf(coordinates, newLength);
+			oldStates = Arrays.copyOf(oldStates, newLength);
+			newStates = Arrays.copyOf(newStates, newLength);
+		}
+		coordinates[count] = getPackedCoordinates(x, y, z);
+		oldStates[count] = BlockFullState.getPacked(oldId, oldData);
+		newStates[count] = BlockFullState.getPacked(newId, newData);
+		count++;
+	}
+
+	/**
+	 * Gets the number of changes collected since the last flush
+	 * @return the number of changes
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets if no changes have been collected since the last flush
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Discards all collected changes
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Calls a {@link BlockChangeBatchEvent} with the collected changes, if there are any, and clears the batch
+	 * @param manager to call the event with
+	 * @param stage the tick stage the changes were made in
+	 * @return the event, or null if there were no changes or no listeners
+	 */
+	public BlockChangeBatchEvent flush(EventManager manager, int stage) {
+		if (count == 0) {
+			return null;
+		}
+		BlockChangeBatchEvent event = null;
+		if (isEnabled()) {
+			event = new BlockChangeBatchEvent(chunk, stage, count, Arrays.copyOf(coordinates, count), Arrays.copyOf(oldStates, count), Arrays.copyOf(newStates, count));
+			manager.callEvent(event);
+		}
+		count = 0;
+		return event;
+	}
+
+	/**
+	 * Packs chunk-relative coordinates into a short
+	 * @param x coordinate, only the chunk-relative bits are used
+	 * @param y coordinate, only the chunk-relative bits are used
+	 * @param z coordinate, only the chunk-relative bits are used
+	 * @return the packed coordinates
+	 */
+	public static short getPackedCoordinates(int x, int y, int z) {
+		return (short) (((x & COORDINATE_MASK) << (COORDINATE_BITS << 1)) | ((y & COORDINATE_MASK) << COORDINATE_BITS) | (z & COORDINATE_MASK));
+	}
+
+	/**
+	 * Gets the chunk-relative x coordinate from packed coordinates
+	 * @param packed coordinates
+	 * @return the x coordinate
+	 */
+	public static int getLocalX(int packed) {
+		return (packed >> (COORDINATE_BITS << 1)) & COORDINATE_MASK;
+	}
+
+	/**
+	 * Gets the chunk-relative y coordinate from packed coordinates
+	 * @param packed coordinates
+	 * @return the y coordinate
+	 */
+	public static int getLocalY(int packed) {
+		return (packed >> COORDINATE_BITS) & COORDINATE_MASK;
+	}
+
+	/**
+	 * Gets the chunk-relative z coordinate from packed coordinates
+	 * @param packed coordinates
+	 * @return the z coordinate
+	 */
+	public static int getLocalZ(int packed) {
+		return packed & COORDINATE_MASK;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event.block;
+
+import org.spout.api.event.HandlerList;
+import org.spout.api.event.chunk.ChunkEvent;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.block.BlockFullState;
+
+/**
+ * Called once per {@link Chunk} with all the block changes made in that chunk during a tick stage.<br/>
+ * <br/>
+ * This is an alternative to listening for a {@link BlockChangeEvent} per block, for listeners which process changes in bulk.
+ * The changes are stored in primitive arrays; coordinates are packed chunk-relative indexes
+ * and states are packed with {@link BlockFullState#getPacked(short, short)}.<br/>
+ * The changes have already been made and can not be cancelled.
+ */
+public class BlockChangeBatchEvent extends ChunkEvent {
+	private static HandlerList handlers = new HandlerList();
+	private final int stage;
+	private final int count;
+	private final short[] coordinates;
+	private final int[] oldStates;
+	private final int[] newStates;
+
+	public BlockChangeBatchEvent(Chunk chunk, int stage, int count, short[] coordinates, int[] oldStates, int[] newStates) {
+		super(chunk);
+		this.stage = stage;
+		this.count = count;
+		this.coordinates = coordinates;
+		this.oldStates = oldStates;
+		this.newStates = newStates;
+	}
+
+	/**
+	 * Gets the {@link org.spout.api.scheduler.TickStage} in which the changes were made
+	 * @return the tick stage
+	 */
+	public int getStage() {
+		return stage;
+	}
+
+	/**
+	 * Gets the number of block changes in this batch. The arrays may be longer than this.
+	 * @return the number of changes
+	 */
+	public int getChangeCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the world x coordinate of the n-th change
+	 * @param n index of the change
+	 * @return the x coordinate
+	 */
+	public int getBlockX(int n) {
+		return getChunk().getBlockX() + BlockChangeBatch.getLocalX(coordinates[n]);
+	}
+
+	/**
+	 * Gets the world y coordinate of the n-th change
+	 * @param n index of the change
+	 * @return the y coordinate
+	 */
+	public int getBlockY(int n) {
+		return getChunk().getBlockY() + BlockChangeBatch.getLocalY(coordinates[n]);
+	}
+
+	/**
+	 * Gets the world z coordinate of the n-th change
+	 * @param n index of the change
+	 * @return the z coordinate
+	 */
+	public int getBlockZ(int n) {
+		return getChunk().getBlockZ() + BlockChangeBatch.getLocalZ(coordinates[n]);
+	}
+
+	/**
+	 * Gets the material of the block before the n-th change
+	 * @param n index of the change
+	 * @return the old material
+	 */
+	public BlockMaterial getOldMaterial(int n) {
+		return BlockFullState.getMaterial(oldStates[n]);
+	}
+
+	/**
+	 * Gets the material of the block after the n-th change
+	 * @param n index of the change
+	 * @return the new material
+	 */
+	public BlockMaterial getNewMaterial(int n) {
+		return BlockFullState.getMaterial(newStates[n]);
+	}
+
+	/**
+	 * Gets the packed chunk-relative coordinates of the changes, see {@link BlockChangeBatch#getLocalX(int)}.<br/>
+	 * The array must not be modified.
+	 * @return the coordinates array
+	 */
+	public short[] getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 * Gets the packed block states before each change.<br/>
+	 * The array must not be modified.
+	 * @return the old states array
+	 */
+	public int[] getOldStates() {
+		return oldStates;
+	}
+
+	/**
+	 * Gets the packed block states after each change.<br/>
+	 * The array must not be modified.
+	 * @return the new states array
+	 */
+	public int[] getNewStates() {
+		return newStates;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
@@ -27,13 +27,15 @@
 package org.spout.api.event.block;
 
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionBoundEvent;
 import org.spout.api.event.Cause;
 import org.spout.api.geo.cuboid.Block;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Designates an event that occurs on a {@link Block} from a {@link Cause}
  */
-public abstract class BlockEvent extends Event {
+public abstract class BlockEvent extends Event implements RegionBoundEvent {
 	private final Block block;
 	private final Cause<?> reason;
 
@@ -58,4 +60,9 @@ public abstract class BlockEvent extends Event {
 	public Cause<?> getCause() {
 		return reason;
 	}
+
+	@Override
+	public Region getRegion() {
+		return block.getRegion();
+	}
 }
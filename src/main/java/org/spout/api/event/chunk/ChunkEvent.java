@@ -27,12 +27,14 @@
 package org.spout.api.event.chunk;
 
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionBoundEvent;
 import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Designates an event that occurs on a {@link Chunk}
  */
-public abstract class ChunkEvent extends Event {
+public abstract class ChunkEvent extends Event implements RegionBoundEvent {
 	protected ChunkEvent(Chunk chunk) {
 		this.chunk = chunk;
 	}
@@ -46,4 +48,9 @@ public abstract class ChunkEvent extends Event {
 	public Chunk getChunk() {
 		return chunk;
 	}
+
+	@Override
+	public Region getRegion() {
+		return chunk.getRegion();
+	}
 }
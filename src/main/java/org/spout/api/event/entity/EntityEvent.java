@@ -28,11 +28,13 @@ package org.spout.api.event.entity;
 
 import org.spout.api.entity.Entity;
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionBoundEvent;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Represents an {@link Entity} related event.
  */
-public abstract class EntityEvent extends Event {
+public abstract class EntityEvent extends Event implements RegionBoundEvent {
 	private final Entity entity;
 
 	public EntityEvent(Entity e) {
@@ -46,4 +48,9 @@ public abstract class EntityEvent extends Event {
 	public Entity getEntity() {
 		return entity;
 	}
+
+	@Override
+	public Region getRegion() {
+		return entity.getRegion();
+	}
 }
@@ -274,6 +274,18 @@ public abstract class Chunk extends Cube implements AreaBlockAccess, AreaPhysics
 	 */
 	public abstract Set<? extends Entity> getObservers();
 	
+	/**
+	 * Gets the modification version of the data in this chunk.<br>
+	 * <br>
+	 * The version changes whenever a block, the light of a block, or a biome in the chunk is changed,
+	 * so data derived from any of them, such as the network payload of the chunk, can be reused for
+	 * as long as the version stays the same.
+	 *
+	 * @return the modification version
+	 */
+	@LiveRead
+	public abstract int getModificationVersion();
+
 	/**
 	 * Gets the lighting buffer associated with the given manager
 	 * 
@@ -0,0 +1,115 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.spout.api.geo.cuboid.Chunk;
+
+/**
+ * Collects the block changes sent to a session during a tick, grouped by chunk.
+ *
+ * @see ChunkBlockUpdates
+ */
+public class BlockUpdateAccumulator {
+	private final LinkedHashMap<Chunk, ChunkBlockUpdates> updates = new LinkedHashMap<Chunk, ChunkBlockUpdates>();
+	private final int threshold;
+
+	/**
+	 * Creates an accumulator
+	 *
+	 * @param threshold the number of changed blocks in a chunk above which the whole chunk is sent instead
+	 */
+	public BlockUpdateAccumulator(int threshold) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("Threshold must be positive");
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Adds a block change
+	 *
+	 * @param chunk the chunk
+	 * @param x chunk relative coordinate
+	 * @param y chunk relative coordinate
+	 * @param z chunk relative coordinate
+	 * @param id the new block id
+	 * @param data the new block data
+	 */
+	public synchronized void add(Chunk chunk, int x, int y, int z, short id, short data) {
+		ChunkBlockUpdates chunkUpdates = updates.get(chunk);
+		if (chunkUpdates == null) {
+			chunkUpdates = new ChunkBlockUpdates(chunk, threshold);
+			updates.put(chunk, chunkUpdates);
+		}
+		chunkUpdates.add(x, y, z, id, data);
+	}
+
+	/**
+	 * Removes the changes for a chunk, for example when the whole chunk is sent
+	 *
+	 * @param chunk the chunk
+	 */
+	public synchronized void remove(Chunk chunk) {
+		updates.remove(chunk);
+	}
+
+	/**
+	 * Gets the number of chunks with changed blocks
+	 *
+	 * @return the number of chunks
+	 */
+	public synchronized int size() {
+		return updates.size();
+	}
+
+	/**
+	 * Gets the threshold above which the whole chunk is sent instead
+	 *
+	 * @return the threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Removes and returns the changes collected since the last drain, in the order the chunks were first changed
+	 *
+	 * @return the changes for each chunk
+	 */
+	public synchronized List<ChunkBlockUpdates> drain() {
+		if (updates.isEmpty()) {
+			return new ArrayList<ChunkBlockUpdates>(0);
+		}
+		List<ChunkBlockUpdates> drained = new ArrayList<ChunkBlockUpdates>(updates.values());
+		updates.clear();
+		return drained;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.spout.api.util.StringUtil;
+
+/**
+ * Wraps a {@link Message} that is sent to many sessions so that it is only encoded once for each {@link Protocol}.<br>
+ * <br>
+ * The first session to encode the message stores the encoded packet, and every session gets a read-only view of it
+ * with its own indexes. Any {@link ChannelProcessor} set up for a session is still applied to its view, after the shared encode.<br>
+ * <br>
+ * Messages which change the state of the channel, such as a {@link ProcessorSetupMessage}, should not be broadcast.
+ */
+public final class BroadcastMessage implements Message {
+	private final Message message;
+	private final ConcurrentHashMap<Protocol, ChannelBuffer> encodedToClient = new ConcurrentHashMap<Protocol, ChannelBuffer>();
+	private final ConcurrentHashMap<Protocol, ChannelBuffer> encodedToServer = new ConcurrentHashMap<Protocol, ChannelBuffer>();
+	private final AtomicInteger encodeCount = new AtomicInteger();
+
+	public BroadcastMessage(Message message) {
+		if (message == null) {
+			throw new IllegalArgumentException("Message may not be null");
+		} else if (message instanceof BroadcastMessage) {
+			throw new IllegalArgumentException("Broadcast messages may not be nested");
+		}
+		this.message = message;
+	}
+
+	/**
+	 * Sends a message to all of the given sessions, encoding it once for each protocol used by the sessions
+	 *
+	 * @param message the message to send
+	 * @param sessions the sessions to send the message to
+	 * @return the message that was sent to the sessions
+	 */
+	public static BroadcastMessage broadcast(Message message, Iterable<? extends Session> sessions) {
+		BroadcastMessage broadcast = new BroadcastMessage(message);
+		for (Session session : sessions) {
+			session.send(broadcast);
+		}
+		return broadcast;
+	}
+
+	/**
+	 * Gets the message being broadcast
+	 *
+	 * @return the message
+	 */
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * Gets the number of times the message has been encoded, which is at most once per protocol and direction
+	 *
+	 * @return the number of encodes
+	 */
+	public int getEncodeCount() {
+		return encodeCount.get();
+	}
+
+	/**
+	 * Gets a read-only view of the encoded message, encoding it if this is the first request for the given protocol
+	 */
+	ChannelBuffer getEncoded(CommonEncoder encoder, Channel c, Protocol protocol, boolean onClient) throws IOException {
+		ConcurrentHashMap<Protocol, ChannelBuffer> encoded = onClient ? encodedToServer : encodedToClient;
+		ChannelBuffer buffer = encoded.get(protocol);
+		if (buffer == null) {
+			synchronized (encoded) {
+				buffer = encoded.get(protocol);
+				if (buffer == null) {
+					Message toEncode = message;
+					MessageCodec<?> codec = protocol.getCodecLookupService().find(message.getClass());
+					if (codec != null && codec.isDynamic()) {
+						toEncode = protocol.getWrappedMessage(false, message);
+					}
+					buffer = encoder.encodeMessage(c, protocol, toEncode);
+					encodeCount.incrementAndGet();
+					encoded.put(protocol, buffer);
+				}
+			}
+		}
+		return ChannelBuffers.unmodifiableBuffer(buffer);
+	}
+
+	@Override
+	public boolean isAsync() {
+		return message.isAsync();
+	}
+
+	@Override
+	public int getChannelId() {
+		return message.getChannelId();
+	}
+
+	@Override
+	public String toString() {
+		return StringUtil.toNamedString(this, message);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		} else if (!(other instanceof BroadcastMessage)) {
+			return false;
+		} else {
+			return message.equals(((BroadcastMessage) other).message);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return message.hashCode() * 31 + 7;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import gnu.trove.map.hash.TShortIntHashMap;
+
+import org.spout.api.event.block.BlockChangeBatch;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.block.BlockFullState;
+
+/**
+ * The block changes to a single chunk made during a tick, to be sent to a session as one message.<br>
+ * <br>
+ * If a block changes more than once, only its latest state is kept. Once more blocks than the threshold have
+ * changed, the individual changes are discarded and the chunk is marked as overflowed, meaning the whole chunk
+ * should be sent again instead.<br>
+ * <br>
+ * Positions and states are packed the same way as in a {@link BlockChangeBatch}.
+ */
+public class ChunkBlockUpdates {
+	private static final int INITIAL_CAPACITY = 8;
+	private final Chunk chunk;
+	private final int threshold;
+	private final TShortIntHashMap indexes = new TShortIntHashMap(INITIAL_CAPACITY, 0.5F, (short) -1, -1);
+	private short[] positions = new short[INITIAL_CAPACITY];
+	private int[] states = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	private boolean overflowed = false;
+
+	public ChunkBlockUpdates(Chunk chunk, int threshold) {
+		this.chunk = chunk;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Adds a block change
+	 *
+	 * @param x chunk relative coordinate
+	 * @param y chunk relative coordinate
+	 * @param z chunk relative coordinate
+	 * @param id the new block id
+	 * @param data the new block data
+	 */
+	public void add(int x, int y, int z, short id, short data) {
+		if (overflowed) {
+			return;
+		}
+		short position = BlockChangeBatch.getPackedCoordinates(x, y, z);
+		int state = BlockFullState.getPacked(id, data);
+		int index = indexes.get(position);
+		if (index >= 0) {
+			states[index] = state;
+			return;
+		}
+		if (size >= threshold) {
+			overflowed = true;
+			indexes.clear();
+			positions = null;
+			states = null;
+			size = 0;
+			return;
+		}
+		if (size == positions.length) {
+			int length = Math.min(size << 1, Math.max(threshold, INITIAL_CAPACITY));
+			short[] newPositions = new short[length];
+			int[] newStates = new int[length];
+			System.arraycopy(positions, 0, newPositions, 0, size);
+			System.arraycopy(states, 0, newStates, 0, size);
+			positions = newPositions;
+			states = newStates;
+		}
+		positions[size] = position;
+		states[size] = state;
+		indexes.put(position, size);
+		size++;
+	}
+
+	/**
+	 * Gets the chunk the blocks are in
+	 *
+	 * @return the chunk
+	 */
+	public Chunk getChunk() {
+		return chunk;
+	}
+
+	/**
+	 * Gets if more blocks changed than the threshold, in which case the whole chunk should be sent
+	 *
+	 * @return true if the changes overflowed
+	 */
+	public boolean isOverflowed() {
+		return overflowed;
+	}
+
+	/**
+	 * Gets the number of changed blocks, which is 0 if the changes overflowed
+	 *
+	 * @return the number of blocks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the chunk relative x coordinate of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the x coordinate
+	 */
+	public int getX(int i) {
+		return BlockChangeBatch.getLocalX(positions[checkIndex(i)]);
+	}
+
+	/**
+	 * Gets the chunk relative y coordinate of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the y coordinate
+	 */
+	public int getY(int i) {
+		return BlockChangeBatch.getLocalY(positions[checkIndex(i)]);
+	}
+
+	/**
+	 * Gets the chunk relative z coordinate of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the z coordinate
+	 */
+	public int getZ(int i) {
+		return BlockChangeBatch.getLocalZ(positions[checkIndex(i)]);
+	}
+
+	/**
+	 * Gets the new id of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the block id
+	 */
+	public short getId(int i) {
+		return BlockFullState.getId(states[checkIndex(i)]);
+	}
+
+	/**
+	 * Gets the new data of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the block data
+	 */
+	public short getData(int i) {
+		return BlockFullState.getData(states[checkIndex(i)]);
+	}
+
+	/**
+	 * Gets the new material of a changed block
+	 *
+	 * @param i the index of the change
+	 * @return the block material
+	 */
+	public BlockMaterial getMaterial(int i) {
+		return BlockFullState.getMaterial(states[checkIndex(i)]);
+	}
+
+	private int checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index " + i + " is not between 0 and " + size);
+		}
+		return i;
+	}
+}
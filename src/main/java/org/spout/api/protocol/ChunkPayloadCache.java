@@ -0,0 +1,342 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.spout.api.geo.cuboid.Chunk;
+
+/**
+ * A cache of encoded chunk payloads, shared by all of the sessions that send a chunk.<br>
+ * <br>
+ * Entries are keyed by the chunk object and are only used while the {@link Chunk#getModificationVersion()} of the chunk
+ * is the same as when the payload was encoded. A chunk that has been unloaded and loaded again never uses
+ * the payload of the old chunk object. The cache is limited to a number of bytes, and the least
+ * recently used payloads are evicted first.<br>
+ * <br>
+ * Chunks are only weakly referenced, so the payload of an unloaded chunk is dropped once the chunk is collected,
+ * even if {@link #invalidate(Chunk)} is not called.<br>
+ * <br>
+ * If several threads request the payload of the same chunk at the same time, only one of them encodes it.
+ */
+public class ChunkPayloadCache {
+	private final LinkedHashMap<ChunkKey, Entry> entries = new LinkedHashMap<ChunkKey, Entry>(16, 0.75f, true);
+	private final ReferenceQueue<Chunk> collected = new ReferenceQueue<Chunk>();
+	private final long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param maxBytes the maximum total size of the cached payloads
+	 */
+	public ChunkPayloadCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the payload for a chunk, encoding it if there is no payload for the current version of the chunk.<br>
+	 * <br>
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param chunk the chunk
+	 * @param encoder the encoder to use if the payload is not cached
+	 * @return the payload
+	 */
+	public byte[] get(Chunk chunk, PayloadEncoder encoder) {
+		// The version must be read before encoding, so that a change made during the encode leaves the entry stale
+		final int version = chunk.getModificationVersion();
+		ChunkKey key = new ChunkKey(chunk);
+		Entry entry;
+		boolean encode = false;
+		synchronized (this) {
+			removeCollected();
+			entry = entries.get(key);
+			if (entry == null || entry.version != version) {
+				if (entry != null) {
+					removeEntry(key, entry);
+				}
+				key = new ChunkKey(chunk, collected);
+				entry = new Entry(version);
+				entries.put(key, entry);
+				encode = true;
+				misses++;
+			} else {
+				hits++;
+			}
+		}
+
+		if (encode) {
+			try {
+				entry.payload.complete(encoder.encode(chunk));
+			} catch (Throwable t) {
+				entry.payload.fail(t);
+			}
+		}
+
+		byte[] payload;
+		try {
+			payload = entry.payload.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the payload of " + chunk, e);
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entries.remove(key);
+				}
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to encode the payload of " + chunk, e.getCause());
+		}
+
+		if (encode) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entry.length = payload.length;
+					bytes += payload.length;
+					evict();
+				}
+			}
+		}
+		return payload;
+	}
+
+	/**
+	 * Removes the payload of a chunk from the cache, for example when the chunk is unloaded
+	 *
+	 * @param chunk the chunk
+	 */
+	public synchronized void invalidate(Chunk chunk) {
+		ChunkKey key = new ChunkKey(chunk);
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			removeEntry(key, entry);
+		}
+	}
+
+	/**
+	 * Removes all payloads from the cache
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Gets the number of chunks with a cached payload
+	 *
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		removeCollected();
+		return entries.size();
+	}
+
+	/**
+	 * Gets the total size of the cached payloads
+	 *
+	 * @return the number of bytes
+	 */
+	public synchronized long getMemoryUsage() {
+		removeCollected();
+		return bytes;
+	}
+
+	/**
+	 * Gets the maximum total size of the cached payloads
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMaxMemoryUsage() {
+		return maxBytes;
+	}
+
+	/**
+	 * Gets the number of requests which used a cached payload
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of requests which had to encode the payload
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of payloads removed to keep the cache under its size limit
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	private void removeEntry(ChunkKey key, Entry entry) {
+		entries.remove(key);
+		bytes -= entry.length;
+	}
+
+	/**
+	 * Removes the entries of chunks which have been collected
+	 */
+	private void removeCollected() {
+		Reference<? extends Chunk> reference;
+		while ((reference = collected.poll()) != null) {
+			ChunkKey key = (ChunkKey) reference;
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				removeEntry(key, entry);
+			}
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<ChunkKey, Entry>> i = entries.entrySet().iterator();
+		while (bytes > maxBytes && i.hasNext()) {
+			Entry entry = i.next().getValue();
+			if (entry.payload.isDone()) {
+				i.remove();
+				bytes -= entry.length;
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Identifies a chunk object. Keys stored in the map reference the chunk weakly, keys only used for lookups
+	 * reference it directly.
+	 */
+	private static class ChunkKey extends WeakReference<Chunk> {
+		private final Chunk chunk;
+		private final int hash;
+
+		public ChunkKey(Chunk chunk) {
+			super(null);
+			this.chunk = chunk;
+			this.hash = System.identityHashCode(chunk);
+		}
+
+		public ChunkKey(Chunk chunk, ReferenceQueue<Chunk> queue) {
+			super(chunk, queue);
+			this.chunk = null;
+			this.hash = System.identityHashCode(chunk);
+		}
+
+		public Chunk getChunk() {
+			return chunk == null ? get() : chunk;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			} else if (!(o instanceof ChunkKey)) {
+				return false;
+			}
+			Chunk chunk = getChunk();
+			return chunk != null && ((ChunkKey) o).getChunk() == chunk;
+		}
+	}
+
+	private static class Entry {
+		private final int version;
+		private final PayloadTask payload = new PayloadTask();
+		private int length = 0;
+
+		public Entry(int version) {
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Holds the result of an encode, which is run by the requesting thread so the task never references the chunk
+	 */
+	private static class PayloadTask extends FutureTask<byte[]> {
+		private static final Callable<byte[]> NOT_RUNNABLE = new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				throw new UnsupportedOperationException("Payload tasks are completed directly");
+			}
+		};
+
+		public PayloadTask() {
+			super(NOT_RUNNABLE);
+		}
+
+		public void complete(byte[] payload) {
+			set(payload);
+		}
+
+		public void fail(Throwable t) {
+			setException(t);
+		}
+	}
+
+	public interface PayloadEncoder {
+		/**
+		 * Encodes the payload for a chunk.<br>
+		 * <br>
+		 * This is called without any lock held, and the chunk may be read from other threads at the same time.<br>
+		 * <br>
+		 * The payload may only be derived from data covered by {@link Chunk#getModificationVersion()}, which
+		 * is the blocks, light and biomes of the chunk. Anything else, such as entities, must be sent separately.
+		 *
+		 * @param chunk the chunk
+		 * @return the payload
+		 */
+		public byte[] encode(Chunk chunk);
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.math.Vector3;
+
+/**
+ * A queue of chunks waiting to be sent to a session.<br>
+ * <br>
+ * At the start of each tick, the queued chunks are ordered by their distance from the player, with chunks behind the
+ * player treated as further away than chunks in front of the player. Chunks are then taken from the queue until the
+ * chunk or byte budget for the tick is used up.<br>
+ * <br>
+ * The budgets adapt to the write backlog of the session. If the backlog is over the limit, both budgets are halved.
+ * While the backlog is below half the limit, they grow back towards their maximums.
+ */
+public class ChunkSendQueue {
+	private static final float DEFAULT_DIRECTION_WEIGHT = 1.0F;
+	private static final int MIN_CHUNKS_PER_TICK = 1;
+	private static final int CHUNK_BUDGET_STEP = 1;
+	private static final int BYTE_BUDGET_STEPS = 16;
+	private final int maxChunksPerTick;
+	private final int maxBytesPerTick;
+	private final int minBytesPerTick;
+	private final long backlogLimit;
+	private final Set<Chunk> queued = new LinkedHashSet<Chunk>();
+	private float directionWeight = DEFAULT_DIRECTION_WEIGHT;
+	private int chunkBudget;
+	private int byteBudget;
+	private QueuedChunk[] order = new QueuedChunk[0];
+	private int orderIndex = 0;
+	private int tickChunks = 0;
+	private int tickBytes = 0;
+	private int peakSize = 0;
+	private long totalChunks = 0;
+	private long totalBytes = 0;
+
+	/**
+	 * Creates a chunk send queue
+	 *
+	 * @param maxChunksPerTick the maximum number of chunks sent in a tick
+	 * @param maxBytesPerTick the maximum number of bytes sent in a tick
+	 * @param backlogLimit the write backlog, in bytes, above which the budgets are reduced
+	 */
+	public ChunkSendQueue(int maxChunksPerTick, int maxBytesPerTick, long backlogLimit) {
+		if (maxChunksPerTick < MIN_CHUNKS_PER_TICK || maxBytesPerTick <= 0 || backlogLimit <= 0) {
+			throw new IllegalArgumentException("Budgets and backlog limit must be positive");
+		}
+		this.maxChunksPerTick = maxChunksPerTick;
+		this.maxBytesPerTick = maxBytesPerTick;
+		this.minBytesPerTick = Math.max(1, maxBytesPerTick / BYTE_BUDGET_STEPS);
+		this.backlogLimit = backlogLimit;
+		this.chunkBudget = maxChunksPerTick;
+		this.byteBudget = maxBytesPerTick;
+	}
+
+	/**
+	 * Adds a chunk to the queue
+	 *
+	 * @param c the chunk
+	 * @return true if the chunk was not already queued
+	 */
+	public synchronized boolean add(Chunk c) {
+		boolean added = queued.add(c);
+		if (queued.size() > peakSize) {
+			peakSize = queued.size();
+		}
+		return added;
+	}
+
+	/**
+	 * Removes a chunk from the queue
+	 *
+	 * @param c the chunk
+	 * @return true if the chunk was queued
+	 */
+	public synchronized boolean remove(Chunk c) {
+		return queued.remove(c);
+	}
+
+	/**
+	 * Gets if a chunk is queued
+	 *
+	 * @param c the chunk
+	 * @return true if the chunk is queued
+	 */
+	public synchronized boolean contains(Chunk c) {
+		return queued.contains(c);
+	}
+
+	/**
+	 * Sets how much chunks behind the player are pushed back in the queue.<br>
+	 * <br>
+	 * A chunk directly behind the player is treated as if it was (1 + weight) times as far away as it is.
+	 * A weight of 0 orders the chunks by distance alone.
+	 *
+	 * @param directionWeight the weight, which may not be negative
+	 */
+	public synchronized void setDirectionWeight(float directionWeight) {
+		if (directionWeight < 0) {
+			throw new IllegalArgumentException("Direction weight may not be negative");
+		}
+		this.directionWeight = directionWeight;
+	}
+
+	/**
+	 * Starts a tick, adjusting the budgets for the backlog and ordering the queued chunks
+	 *
+	 * @param position the position of the player
+	 * @param forward the direction the player is facing, or null to order the chunks by distance alone
+	 * @param backlog the number of bytes written to the session which have not yet been sent
+	 */
+	public synchronized void startTick(Vector3 position, Vector3 forward, long backlog) {
+		if (backlog > backlogLimit) {
+			chunkBudget = Math.max(MIN_CHUNKS_PER_TICK, chunkBudget >> 1);
+			byteBudget = Math.max(minBytesPerTick, byteBudget >> 1);
+		} else if (backlog < backlogLimit >> 1) {
+			chunkBudget = Math.min(maxChunksPerTick, chunkBudget + CHUNK_BUDGET_STEP);
+			byteBudget = Math.min(maxBytesPerTick, byteBudget + minBytesPerTick);
+		}
+		tickChunks = 0;
+		tickBytes = 0;
+
+		if (order.length < queued.size()) {
+			order = new QueuedChunk[queued.size()];
+		} else {
+			Arrays.fill(order, null);
+		}
+		int i = 0;
+		for (Chunk c : queued) {
+			order[i++] = new QueuedChunk(c, getPriority(c, position, forward));
+		}
+		Arrays.sort(order, 0, i);
+		orderIndex = 0;
+	}
+
+	/**
+	 * Takes the next chunk to send from the queue, if the budget for the tick has not been used up.<br>
+	 * <br>
+	 * Chunks which are added during the tick are not returned until the next tick.
+	 *
+	 * @return the chunk, or null if there are no chunks to send this tick
+	 */
+	public synchronized Chunk poll() {
+		if (tickChunks >= chunkBudget || tickBytes >= byteBudget) {
+			return null;
+		}
+		while (orderIndex < order.length && order[orderIndex] != null) {
+			Chunk c = order[orderIndex].chunk;
+			order[orderIndex++] = null;
+			if (queued.remove(c)) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records that a chunk taken from the queue was sent
+	 */
+	public void chunkSent() {
+		chunksSent(1);
+	}
+
+	/**
+	 * Records that several chunks were sent, such as when sending a chunk taken from the queue also sent its neighbours
+	 *
+	 * @param count the number of chunks
+	 */
+	public synchronized void chunksSent(int count) {
+		tickChunks += count;
+		totalChunks += count;
+	}
+
+	/**
+	 * Records bytes sent as part of a chunk
+	 *
+	 * @param bytes the number of bytes
+	 */
+	public synchronized void bytesSent(int bytes) {
+		tickBytes += bytes;
+		totalBytes += bytes;
+	}
+
+	/**
+	 * Gets the number of chunks in the queue
+	 *
+	 * @return the queue depth
+	 */
+	public synchronized int getSize() {
+		return queued.size();
+	}
+
+	/**
+	 * Gets the largest number of chunks in the queue since the statistics were last reset
+	 *
+	 * @return the peak queue depth
+	 */
+	public synchronized int getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Gets the current budget for the number of chunks sent in a tick
+	 *
+	 * @return the chunk budget
+	 */
+	public synchronized int getChunkBudget() {
+		return chunkBudget;
+	}
+
+	/**
+	 * Gets the current budget for the number of bytes sent in a tick
+	 *
+	 * @return the byte budget
+	 */
+	public synchronized int getByteBudget() {
+		return byteBudget;
+	}
+
+	/**
+	 * Gets the total number of chunks sent since the statistics were last reset
+	 *
+	 * @return the number of chunks
+	 */
+	public synchronized long getTotalChunksSent() {
+		return totalChunks;
+	}
+
+	/**
+	 * Gets the total number of chunk bytes sent since the statistics were last reset
+	 *
+	 * @return the number of bytes
+	 */
+	public synchronized long getTotalBytesSent() {
+		return totalBytes;
+	}
+
+	/**
+	 * Resets the peak queue depth and the totals
+	 */
+	public synchronized void resetStatistics() {
+		peakSize = queued.size();
+		totalChunks = 0;
+		totalBytes = 0;
+	}
+
+	/**
+	 * Gets the chunks in the queue
+	 *
+	 * @return a copy of the queued chunks
+	 */
+	public synchronized Set<Chunk> getQueued() {
+		return new LinkedHashSet<Chunk>(queued);
+	}
+
+	private float getPriority(Chunk c, Vector3 position, Vector3 forward) {
+		float dx = c.getBlockX() + (Chunk.BLOCKS.SIZE >> 1) - position.getX();
+		float dy = c.getBlockY() + (Chunk.BLOCKS.SIZE >> 1) - position.getY();
+		float dz = c.getBlockZ() + (Chunk.BLOCKS.SIZE >> 1) - position.getZ();
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (forward == null || directionWeight == 0 || distance <= Chunk.BLOCKS.SIZE) {
+			return distance;
+		}
+		float cos = (dx * forward.getX() + dy * forward.getY() + dz * forward.getZ()) / distance;
+		return distance * (1 + directionWeight * (1 - cos) * 0.5F);
+	}
+
+	private static class QueuedChunk implements Comparable<QueuedChunk> {
+		private final Chunk chunk;
+		private final float priority;
+
+		public QueuedChunk(Chunk chunk, float priority) {
+			this.chunk = chunk;
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(QueuedChunk o) {
+			return Float.compare(priority, o.priority);
+		}
+	}
+}
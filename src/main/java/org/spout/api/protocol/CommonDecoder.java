@@ -52,15 +52,14 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 		this.onClient = onClient;
 	}
 
+	@Override
+	protected int getFrameLength(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) throws Exception {
+		return getProtocol(c).getFrameLength(buf);
+	}
+
 	@Override
 	protected Object decodeProcessed(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) throws Exception {
-		if (protocol == null) {
-			if (Spout.getEngine() instanceof Client) {
-				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
-			} else {
-				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
-			}
-		}
+		Protocol protocol = getProtocol(c);
 
 		MessageCodec<?> codec;
 		try {
@@ -84,6 +83,17 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 		return codec.decode(onClient, buf);
 	}
 
+	private Protocol getProtocol(Channel c) {
+		if (protocol == null) {
+			if (Spout.getEngine() instanceof Client) {
+				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
+			} else {
+				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
+			}
+		}
+		return protocol;
+	}
+
 	void setProtocol(Protocol proto) {
 		this.protocol = proto;
 	}
@@ -27,6 +27,7 @@
 package org.spout.api.protocol;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -35,13 +36,21 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.spout.api.Client;
 import org.spout.api.Spout;
+import org.spout.api.protocol.dynamicid.DynamicMessageEncoder;
 
 /**
  * A {@link OneToOneEncoder} which encodes Minecraft {@link Message}s into
  * {@link ChannelBuffer}s.
  */
 public class CommonEncoder extends PostprocessEncoder {
+	private static final int SIZE_HINT_MASK = 0xFF;
+	private static final int MIN_SIZE_HINT = 64;
 	private volatile Protocol protocol = null;
+	/**
+	 * The size of the last message encoded for each opcode, used to size the buffer for the next one.
+	 * Opcodes may share a slot, this only affects how often the buffer has to grow.
+	 */
+	private final int[] sizeHints = new int[SIZE_HINT_MASK + 1];
 
 	private final boolean onClient;
 
@@ -49,7 +58,6 @@ public class CommonEncoder extends PostprocessEncoder {
 		this.onClient = onClient;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel c, Object msg) throws Exception {
 		if (msg instanceof Message) {
@@ -60,21 +68,78 @@ public class CommonEncoder extends PostprocessEncoder {
 					protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
 				}
 			}
-			Message message = (Message) msg;
+			if (msg instanceof MessageBatch) {
+				List<Message> messages = ((MessageBatch) msg).getMessages();
+				ChannelBuffer[] buffers = new ChannelBuffer[messages.size()];
+				for (int i = 0; i < buffers.length; i++) {
+					buffers[i] = encodeBatched(c, messages.get(i));
+				}
+				return ChannelBuffers.wrappedBuffer(buffers);
+			}
+			if (msg instanceof BroadcastMessage) {
+				return ((BroadcastMessage) msg).getEncoded(this, c, protocol, onClient);
+			}
+			return encodeMessage(c, protocol, (Message) msg);
+		}
+		return msg;
+	}
 
-			Class<? extends Message> clazz = message.getClass();
-			MessageCodec<Message> codec;
+	/**
+	 * Encodes a message from a batch, which has not been passed through the {@link DynamicMessageEncoder}
+	 */
+	private ChannelBuffer encodeBatched(Channel c, Message message) throws IOException {
+		if (message instanceof BroadcastMessage) {
+			return ((BroadcastMessage) message).getEncoded(this, c, protocol, onClient);
+		}
+		MessageCodec<?> codec = protocol.getCodecLookupService().find(message.getClass());
+		if (codec != null && codec.isDynamic()) {
+			message = protocol.getWrappedMessage(false, message);
+		}
+		return encodeMessage(c, protocol, message);
+	}
 
-			codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(clazz);
-			if (codec == null) {
-				throw new IOException("Unknown message type: " + clazz + ".");
-			}
+	/**
+	 * Encodes a message, including the packet header, using the given protocol.
+	 */
+	@SuppressWarnings("unchecked")
+	ChannelBuffer encodeMessage(Channel c, Protocol protocol, Message message) throws IOException {
+		Class<? extends Message> clazz = message.getClass();
+		MessageCodec<Message> codec;
+
+		codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(clazz);
+		if (codec == null) {
+			throw new IOException("Unknown message type: " + clazz + ".");
+		}
+
+		int headerLength = protocol.getMaxHeaderLength();
+		if (headerLength >= 0) {
+			return encodeContiguous(c, protocol, codec, message, headerLength);
+		}
 
+		ChannelBuffer messageBuf = codec.encode(onClient, message);
+		ChannelBuffer headerBuf = protocol.writeHeader(codec, messageBuf);
+		return ChannelBuffers.wrappedBuffer(headerBuf, messageBuf);
+	}
+
+	/**
+	 * Encodes a message into a single buffer from the channel's buffer factory, leaving space for the header in front of the message.
+	 * Codecs which can't write to a supplied buffer have their encoded message copied in after the reserved space.
+	 */
+	private ChannelBuffer encodeContiguous(Channel c, Protocol protocol, MessageCodec<Message> codec, Message message, int headerLength) throws IOException {
+		int slot = codec.getOpcode() & SIZE_HINT_MASK;
+		int sizeHint = Math.max(MIN_SIZE_HINT, sizeHints[slot]);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(headerLength + sizeHint, c.getConfig().getBufferFactory());
+		buffer.writerIndex(headerLength);
+		buffer.readerIndex(headerLength);
+
+		if (!codec.encode(onClient, message, buffer)) {
 			ChannelBuffer messageBuf = codec.encode(onClient, message);
-			ChannelBuffer headerBuf = protocol.writeHeader(codec, messageBuf);
-			return ChannelBuffers.wrappedBuffer(headerBuf, messageBuf);
+			buffer.writeBytes(messageBuf, messageBuf.readerIndex(), messageBuf.readableBytes());
 		}
-		return msg;
+		sizeHints[slot] = buffer.writerIndex() - headerLength;
+
+		protocol.writeHeader(codec, buffer, headerLength);
+		return buffer;
 	}
 
 	void setProtocol(Protocol protocol) {
@@ -0,0 +1,180 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * A processor which compresses the messages written to a channel, to be read by an {@link InflateChannelProcessor}.<br>
+ * <br>
+ * Each message is written as one frame. Messages shorter than the threshold are not worth compressing and are written
+ * unchanged. Longer messages are compressed with a deflater kept for the life of the channel, flushed at the end of each
+ * message, so later messages can refer back to the data of earlier ones.<br>
+ * <br>
+ * To enable compression, a protocol's {@link ProcessorSetupMessage} returns a new DeflateChannelProcessor from
+ * {@link ProcessorSetupMessage#getProcessor()} on the sending side, and a new InflateChannelProcessor on the receiving side.
+ */
+public class DeflateChannelProcessor extends ZlibChannelProcessor {
+	private static final int SYNC_FLUSH = 2;
+	private static final Method deflateWithFlush;
+	private final Deflater deflater;
+	private final int threshold;
+	private byte[] inputBuffer;
+	private byte[] outputBuffer;
+
+	static {
+		Method method;
+		try {
+			// Sync flushing was added to Deflater in Java 7
+			method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+		} catch (NoSuchMethodException e) {
+			method = null;
+		}
+		deflateWithFlush = method;
+	}
+
+	/**
+	 * Creates a processor using the default compression level
+	 *
+	 * @param capacity the size of the buffers used to compress data
+	 * @param threshold the length of the shortest message which is compressed
+	 */
+	public DeflateChannelProcessor(int capacity, int threshold) {
+		this(capacity, threshold, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a processor
+	 *
+	 * @param capacity the size of the buffers used to compress data
+	 * @param threshold the length of the shortest message which is compressed
+	 * @param level the compression level, from 0 to 9
+	 */
+	public DeflateChannelProcessor(int capacity, int threshold, int level) {
+		super(capacity);
+		this.threshold = threshold;
+		this.deflater = new Deflater(level);
+		this.inputBuffer = new byte[capacity];
+		this.outputBuffer = new byte[capacity];
+	}
+
+	/**
+	 * Gets the length of the shortest message which is compressed
+	 *
+	 * @return the threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public synchronized ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input, ChannelBuffer buffer) {
+		int length = input.readableBytes();
+		if (length < threshold) {
+			buffer = ensureWritable(ctx, buffer, length + 5);
+			int start = buffer.writerIndex();
+			writeHeader(buffer, length, false);
+			buffer.writeBytes(input, length);
+			addStatistics(length, buffer.writerIndex() - start, false, 0);
+			return buffer;
+		}
+
+		if (inputBuffer.length < length) {
+			inputBuffer = new byte[length];
+		}
+		input.readBytes(inputBuffer, 0, length);
+
+		long startTime = getTime();
+		deflater.setInput(inputBuffer, 0, length);
+		int compressed = deflate();
+		long time = getTime() - startTime;
+
+		buffer = ensureWritable(ctx, buffer, compressed + 5);
+		int start = buffer.writerIndex();
+		writeHeader(buffer, compressed, true);
+		buffer.writeBytes(outputBuffer, 0, compressed);
+		addStatistics(length, buffer.writerIndex() - start, true, time);
+		return buffer;
+	}
+
+	/**
+	 * Compresses all of the deflater input into the output buffer, returning the compressed length
+	 */
+	private int deflate() {
+		int compressed = 0;
+		if (deflateWithFlush == null) {
+			// Without sync flushing, each frame is a complete deflate stream
+			deflater.finish();
+			while (!deflater.finished()) {
+				growOutput(compressed);
+				compressed += deflater.deflate(outputBuffer, compressed, outputBuffer.length - compressed);
+			}
+			deflater.reset();
+			return compressed;
+		}
+		while (true) {
+			growOutput(compressed);
+			int space = outputBuffer.length - compressed;
+			int written;
+			try {
+				written = (Integer) deflateWithFlush.invoke(deflater, outputBuffer, compressed, space, SYNC_FLUSH);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to compress", e);
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException("Unable to compress", e.getCause());
+			}
+			compressed += written;
+			// The flush is only complete if the deflater didn't fill the space it was given
+			if (written < space) {
+				return compressed;
+			}
+		}
+	}
+
+	private void growOutput(int used) {
+		if (used == outputBuffer.length) {
+			byte[] newBuffer = new byte[outputBuffer.length << 1];
+			System.arraycopy(outputBuffer, 0, newBuffer, 0, used);
+			outputBuffer = newBuffer;
+		}
+	}
+
+	@Override
+	protected long getCompressedBytes() {
+		return getBytesOut();
+	}
+
+	@Override
+	protected long getUncompressedBytes() {
+		return getBytesIn();
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.spout.api.entity.Entity;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.util.hashing.Int21TripleHashed;
+
+/**
+ * Decides which entities of a world each session can see, using a uniform grid of cells.<br>
+ * <br>
+ * Entities are placed in the cell containing their {@link org.spout.api.component.entity.SceneComponent} position.
+ * An entity becomes visible to a player when its cell is within the enter radius of the player's cell, and stops being
+ * visible once its cell is further away than the leave radius. Having the leave radius larger than the enter radius
+ * stops entities near the edge of the view from being spawned and destroyed over and over.<br>
+ * <br>
+ * Visibility can only change when an entity or a player moves into a new cell, so each tick only the entities which
+ * crossed a cell boundary are checked against each player. The whole neighbourhood of a player is only scanned when
+ * the player itself changes cell.<br>
+ * <br>
+ * Entities are spawned and destroyed for a player through
+ * {@link ServerNetworkSynchronizer#syncEntity(Entity, org.spout.api.geo.discrete.Transform, boolean, boolean, boolean)}.<br>
+ * <br>
+ * This class is not thread safe.
+ */
+public class EntityInterestGrid {
+	private static final long NO_CELL = Long.MIN_VALUE;
+	private final World world;
+	private final int cellSize;
+	private final int enterRadius;
+	private final int leaveRadius;
+	private final TLongObjectHashMap<Set<Entity>> cells = new TLongObjectHashMap<Set<Entity>>();
+	private final TObjectLongHashMap<Entity> entityCells = new TObjectLongHashMap<Entity>(16, 0.5F, NO_CELL);
+	private final Set<Entity> moved = new LinkedHashSet<Entity>();
+	private final Set<Entity> removed = new LinkedHashSet<Entity>();
+	private final Map<ServerNetworkSynchronizer, Observer> observers = new LinkedHashMap<ServerNetworkSynchronizer, Observer>();
+
+	/**
+	 * Creates an interest grid
+	 *
+	 * @param world the world the entities are in
+	 * @param cellSize the size of each cell, in blocks
+	 * @param enterRadius the distance, in cells, at which entities become visible
+	 * @param leaveRadius the distance, in cells, beyond which entities are no longer visible
+	 */
+	public EntityInterestGrid(World world, int cellSize, int enterRadius, int leaveRadius) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("Cell size must be positive");
+		} else if (enterRadius < 0 || leaveRadius < enterRadius) {
+			throw new IllegalArgumentException("The leave radius may not be less than the enter radius");
+		}
+		this.world = world;
+		this.cellSize = cellSize;
+		this.enterRadius = enterRadius;
+		this.leaveRadius = leaveRadius;
+	}
+
+	/**
+	 * Updates the cell of an entity from its current position.<br>
+	 * <br>
+	 * Entities which have been removed or are in another world are removed from the grid.
+	 *
+	 * @param e the entity
+	 */
+	public void update(Entity e) {
+		Point position = e.getScene().getPosition();
+		if (e.isRemoved() || position == null || position.getWorld() != world) {
+			remove(e);
+			return;
+		}
+		long cell = getCell(position);
+		long oldCell = entityCells.get(e);
+		if (oldCell == cell) {
+			return;
+		}
+		if (oldCell != NO_CELL) {
+			removeFromCell(e, oldCell);
+		}
+		Set<Entity> entities = cells.get(cell);
+		if (entities == null) {
+			entities = new HashSet<Entity>();
+			cells.put(cell, entities);
+		}
+		entities.add(e);
+		entityCells.put(e, cell);
+		removed.remove(e);
+		moved.add(e);
+	}
+
+	/**
+	 * Removes an entity from the grid. It is destroyed for every player that could see it at the next {@link #updateObservers()}.
+	 *
+	 * @param e the entity
+	 */
+	public void remove(Entity e) {
+		long cell = entityCells.remove(e);
+		if (cell != NO_CELL) {
+			removeFromCell(e, cell);
+			moved.remove(e);
+			removed.add(e);
+		}
+	}
+
+	/**
+	 * Adds a player whose visible entities are managed by this grid
+	 *
+	 * @param synchronizer the synchronizer of the player
+	 */
+	public void addObserver(ServerNetworkSynchronizer synchronizer) {
+		if (!observers.containsKey(synchronizer)) {
+			observers.put(synchronizer, new Observer());
+		}
+	}
+
+	/**
+	 * Stops managing the visible entities of a player. No entities are destroyed for the player.
+	 *
+	 * @param synchronizer the synchronizer of the player
+	 */
+	public void removeObserver(ServerNetworkSynchronizer synchronizer) {
+		observers.remove(synchronizer);
+	}
+
+	/**
+	 * Spawns and destroys entities for each player, based on the changes since the last update.<br>
+	 * <br>
+	 * This should be called once per tick, after the positions of all moved entities have been updated.
+	 */
+	public void updateObservers() {
+		for (Map.Entry<ServerNetworkSynchronizer, Observer> entry : observers.entrySet()) {
+			ServerNetworkSynchronizer synchronizer = entry.getKey();
+			Observer observer = entry.getValue();
+			Player player = synchronizer.getPlayer();
+			Point position = player == null ? null : player.getScene().getPosition();
+			if (position == null || position.getWorld() != world) {
+				destroyAll(synchronizer, observer);
+				observer.cell = NO_CELL;
+				continue;
+			}
+			long cell = getCell(position);
+			if (cell != observer.cell) {
+				observer.cell = cell;
+				rescan(synchronizer, player, observer);
+			} else {
+				updateMoved(synchronizer, player, observer);
+			}
+		}
+		moved.clear();
+		removed.clear();
+	}
+
+	/**
+	 * Gets the entities visible to a player
+	 *
+	 * @param synchronizer the synchronizer of the player
+	 * @return the visible entities
+	 */
+	public Set<Entity> getVisible(ServerNetworkSynchronizer synchronizer) {
+		Observer observer = observers.get(synchronizer);
+		if (observer == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(observer.visible);
+	}
+
+	/**
+	 * Gets the number of entities in the grid
+	 *
+	 * @return the number of entities
+	 */
+	public int getEntityCount() {
+		return entityCells.size();
+	}
+
+	/**
+	 * Gets the number of cells which contain at least one entity
+	 *
+	 * @return the number of cells
+	 */
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	private void rescan(ServerNetworkSynchronizer synchronizer, Player player, Observer observer) {
+		List<Entity> destroyed = null;
+		for (Iterator<Entity> i = observer.visible.iterator(); i.hasNext();) {
+			Entity e = i.next();
+			long cell = entityCells.get(e);
+			if (cell == NO_CELL || getDistance(observer.cell, cell) > leaveRadius) {
+				i.remove();
+				if (destroyed == null) {
+					destroyed = new ArrayList<Entity>();
+				}
+				destroyed.add(e);
+			}
+		}
+		if (destroyed != null) {
+			for (Entity e : destroyed) {
+				destroy(synchronizer, e);
+			}
+		}
+
+		int cx = Int21TripleHashed.key1(observer.cell);
+		int cy = Int21TripleHashed.key2(observer.cell);
+		int cz = Int21TripleHashed.key3(observer.cell);
+		for (int x = cx - enterRadius; x <= cx + enterRadius; x++) {
+			for (int y = cy - enterRadius; y <= cy + enterRadius; y++) {
+				for (int z = cz - enterRadius; z <= cz + enterRadius; z++) {
+					Set<Entity> entities = cells.get(Int21TripleHashed.key(x, y, z));
+					if (entities == null) {
+						continue;
+					}
+					for (Entity e : entities) {
+						if (e != player && observer.visible.add(e)) {
+							spawn(synchronizer, e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void updateMoved(ServerNetworkSynchronizer synchronizer, Player player, Observer observer) {
+		for (Entity e : removed) {
+			if (observer.visible.remove(e)) {
+				destroy(synchronizer, e);
+			}
+		}
+		for (Entity e : moved) {
+			if (e == player) {
+				continue;
+			}
+			int distance = getDistance(observer.cell, entityCells.get(e));
+			if (distance <= enterRadius) {
+				if (observer.visible.add(e)) {
+					spawn(synchronizer, e);
+				}
+			} else if (distance > leaveRadius) {
+				if (observer.visible.remove(e)) {
+					destroy(synchronizer, e);
+				}
+			}
+		}
+	}
+
+	private void destroyAll(ServerNetworkSynchronizer synchronizer, Observer observer) {
+		if (observer.visible.isEmpty()) {
+			return;
+		}
+		List<Entity> visible = new ArrayList<Entity>(observer.visible);
+		observer.visible.clear();
+		for (Entity e : visible) {
+			destroy(synchronizer, e);
+		}
+	}
+
+	private void spawn(ServerNetworkSynchronizer synchronizer, Entity e) {
+		synchronizer.syncEntity(e, e.getScene().getTransform(), true, false, false);
+	}
+
+	private void destroy(ServerNetworkSynchronizer synchronizer, Entity e) {
+		synchronizer.syncEntity(e, e.getScene().getTransform(), false, true, false);
+	}
+
+	private void removeFromCell(Entity e, long cell) {
+		Set<Entity> entities = cells.get(cell);
+		if (entities != null) {
+			entities.remove(e);
+			if (entities.isEmpty()) {
+				cells.remove(cell);
+			}
+		}
+	}
+
+	private long getCell(Point position) {
+		int x = (int) Math.floor(position.getX() / cellSize);
+		int y = (int) Math.floor(position.getY() / cellSize);
+		int z = (int) Math.floor(position.getZ() / cellSize);
+		return Int21TripleHashed.key(x, y, z);
+	}
+
+	private static int getDistance(long cell, long otherCell) {
+		int dx = Math.abs(Int21TripleHashed.key1(cell) - Int21TripleHashed.key1(otherCell));
+		int dy = Math.abs(Int21TripleHashed.key2(cell) - Int21TripleHashed.key2(otherCell));
+		int dz = Math.abs(Int21TripleHashed.key3(cell) - Int21TripleHashed.key3(otherCell));
+		return Math.max(dx, Math.max(dy, dz));
+	}
+
+	private static class Observer {
+		private long cell = NO_CELL;
+		private final Set<Entity> visible = new HashSet<Entity>();
+	}
+}
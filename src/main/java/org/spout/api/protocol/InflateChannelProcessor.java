@@ -0,0 +1,134 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * A processor which decompresses the frames written by a {@link DeflateChannelProcessor}.<br>
+ * <br>
+ * The input may be split anywhere, and frames are only processed once they have fully arrived.
+ */
+public class InflateChannelProcessor extends ZlibChannelProcessor {
+	private final Inflater inflater = new Inflater();
+	private final ChannelBuffer pending = ChannelBuffers.dynamicBuffer();
+	private byte[] inputBuffer;
+	private final byte[] outputBuffer;
+	private int inflatedLength;
+
+	/**
+	 * Creates a processor
+	 *
+	 * @param capacity the size of the buffers used to decompress data
+	 */
+	public InflateChannelProcessor(int capacity) {
+		super(capacity);
+		this.inputBuffer = new byte[capacity];
+		this.outputBuffer = new byte[capacity];
+	}
+
+	@Override
+	public synchronized ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input, ChannelBuffer buffer) {
+		pending.writeBytes(input);
+		while (pending.readable()) {
+			int frameStart = pending.readerIndex();
+			int header = readHeader(pending);
+			if (header == -1) {
+				break;
+			}
+			int length = header >>> 1;
+			if (pending.readableBytes() < length) {
+				pending.readerIndex(frameStart);
+				break;
+			}
+			int headerLength = pending.readerIndex() - frameStart;
+			if ((header & COMPRESSED_FLAG) == 0) {
+				buffer = ensureWritable(ctx, buffer, length);
+				buffer.writeBytes(pending, length);
+				addStatistics(length + headerLength, length, false, 0);
+			} else {
+				if (inputBuffer.length < length) {
+					inputBuffer = new byte[length];
+				}
+				pending.readBytes(inputBuffer, 0, length);
+				long startTime = getTime();
+				buffer = inflate(ctx, buffer, length);
+				addStatistics(length + headerLength, inflatedLength, true, getTime() - startTime);
+			}
+		}
+		pending.discardReadBytes();
+		if (buffer == null) {
+			buffer = ensureWritable(ctx, null, 0);
+		}
+		return buffer;
+	}
+
+	private ChannelBuffer inflate(ChannelHandlerContext ctx, ChannelBuffer buffer, int length) {
+		inflater.setInput(inputBuffer, 0, length);
+		inflatedLength = 0;
+		try {
+			while (true) {
+				int inflated = inflater.inflate(outputBuffer);
+				if (inflated > 0) {
+					buffer = ensureWritable(ctx, buffer, inflated);
+					buffer.writeBytes(outputBuffer, 0, inflated);
+					inflatedLength += inflated;
+				}
+				if (inflater.finished()) {
+					// The frame was compressed as a complete stream
+					inflater.reset();
+					break;
+				} else if (inflated == 0 && inflater.needsInput()) {
+					break;
+				} else if (inflated == 0 && inflater.needsDictionary()) {
+					throw new IllegalStateException("Compressed stream requires a dictionary");
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Invalid compressed frame", e);
+		}
+		if (buffer == null) {
+			buffer = ensureWritable(ctx, null, 0);
+		}
+		return buffer;
+	}
+
+	@Override
+	protected long getCompressedBytes() {
+		return getBytesIn();
+	}
+
+	@Override
+	protected long getUncompressedBytes() {
+		return getBytesOut();
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.spout.api.util.StringUtil;
+
+/**
+ * A group of messages written to a channel as one write.<br>
+ * <br>
+ * The messages are encoded in order and sent as a single buffer, so the whole batch reaches the socket with one gathering write.
+ * Messages which change the state of the channel, such as a {@link ProcessorSetupMessage}, are rejected, as the encoder
+ * only acts on them when they are written on their own.
+ *
+ * @see SessionWriteBuffer
+ */
+public final class MessageBatch implements Message {
+	private final List<Message> messages;
+
+	public MessageBatch(List<? extends Message> messages) {
+		for (Message message : messages) {
+			if (message instanceof ProcessorSetupMessage) {
+				throw new IllegalArgumentException("Processor setup messages may not be batched");
+			}
+		}
+		this.messages = Collections.unmodifiableList(new ArrayList<Message>(messages));
+	}
+
+	/**
+	 * Gets the messages in the batch
+	 *
+	 * @return the messages, in the order they are sent
+	 */
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	@Override
+	public boolean isAsync() {
+		return false;
+	}
+
+	@Override
+	public int getChannelId() {
+		return DEFAULT_CHANNEL;
+	}
+
+	@Override
+	public String toString() {
+		return StringUtil.toNamedString(this, messages);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		} else if (!(other instanceof MessageBatch)) {
+			return false;
+		} else {
+			return messages.equals(((MessageBatch) other).messages);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return messages.hashCode() * 31 + 11;
+	}
+}
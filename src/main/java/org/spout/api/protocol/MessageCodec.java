@@ -29,6 +29,7 @@ package org.spout.api.protocol;
 import java.io.IOException;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 public abstract class MessageCodec<T extends Message> {
 	private final Class<T> clazz;
@@ -64,16 +65,87 @@ public abstract class MessageCodec<T extends Message> {
 		return onClient ? encodeToServer(message) : encodeToClient(message);
 	}
 
+	/**
+	 * Encodes a message to a new buffer.<br>
+	 * <br>
+	 * By default the message is written with {@link #encode(Message, ChannelBuffer)}.
+	 *
+	 * @param message the message to encode
+	 * @return the encoded message
+	 * @throws IOException if the message could not be encoded, or this codec does not implement encoding
+	 */
 	public ChannelBuffer encode(T message) throws IOException {
-		return null;
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		if (!encode(message, buffer)) {
+			throw new IOException("Codec " + getClass().getName() + " does not encode " + clazz.getName());
+		}
+		return buffer;
 	}
 
+	/**
+	 * Encodes a message sent to a client to a new buffer.<br>
+	 * <br>
+	 * By default the message is written with {@link #encodeToClient(Message, ChannelBuffer)}, falling back to {@link #encode(Message)}.
+	 *
+	 * @param message the message to encode
+	 * @return the encoded message
+	 * @throws IOException if the message could not be encoded, or this codec does not implement encoding
+	 */
 	public ChannelBuffer encodeToClient(T message) throws IOException {
-		return encode(message);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		return encodeToClient(message, buffer) ? buffer : encode(message);
 	}
 
+	/**
+	 * Encodes a message sent to the server to a new buffer.<br>
+	 * <br>
+	 * By default the message is written with {@link #encodeToServer(Message, ChannelBuffer)}, falling back to {@link #encode(Message)}.
+	 *
+	 * @param message the message to encode
+	 * @return the encoded message
+	 * @throws IOException if the message could not be encoded, or this codec does not implement encoding
+	 */
 	public ChannelBuffer encodeToServer(T message) throws IOException {
-		return encode(message);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		return encodeToServer(message, buffer) ? buffer : encode(message);
+	}
+
+	/**
+	 * Encodes a message by writing it to the end of a buffer supplied by the caller.<br>
+	 * <br>
+	 * This allows the encoder to reserve space for the packet header at the start of the buffer and
+	 * send the whole packet as one contiguous buffer.
+	 *
+	 * @param onClient true if the message is being sent from the client
+	 * @param message the message to encode
+	 * @param buffer the buffer to write the message to
+	 * @return true if the message was written, false if this codec only supports encoding to a new buffer, in which case nothing was written
+	 * @throws IOException
+	 */
+	public final boolean encode(boolean onClient, T message, ChannelBuffer buffer) throws IOException {
+		return onClient ? encodeToServer(message, buffer) : encodeToClient(message, buffer);
+	}
+
+	/**
+	 * Encodes a message by writing it to the end of the given buffer.<br>
+	 * <br>
+	 * Codecs which override this method need not override {@link #encode(Message)}.
+	 *
+	 * @param message the message to encode
+	 * @param buffer the buffer to write the message to
+	 * @return true if the message was written, false if this codec does not support writing to a supplied buffer
+	 * @throws IOException
+	 */
+	public boolean encode(T message, ChannelBuffer buffer) throws IOException {
+		return false;
+	}
+
+	public boolean encodeToClient(T message, ChannelBuffer buffer) throws IOException {
+		return encode(message, buffer);
+	}
+
+	public boolean encodeToServer(T message, ChannelBuffer buffer) throws IOException {
+		return encode(message, buffer);
 	}
 
 	public final T decode(boolean onClient, ChannelBuffer buffer) throws IOException {
@@ -40,6 +40,14 @@ import org.spout.api.protocol.replayable.ReplayableChannelBuffer;
 import org.spout.api.protocol.replayable.ReplayableError;
 
 public abstract class PreprocessReplayingDecoder extends FrameDecoder implements ProcessorHandler {
+	/**
+	 * Returned by {@link #getFrameLength(ChannelHandlerContext, Channel, ChannelBuffer)} when the stream is not length framed
+	 */
+	public static final int NOT_FRAMED = -2;
+	/**
+	 * Returned by {@link #getFrameLength(ChannelHandlerContext, Channel, ChannelBuffer)} when more bytes are needed to read the frame length
+	 */
+	public static final int FRAME_INCOMPLETE = -1;
 
 	private final int capacity;
 	private final AtomicReference<ChannelProcessor> processor = new AtomicReference<ChannelProcessor>();
@@ -95,13 +103,22 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 				liveBuffer = processedBuffer;
 			}
 			int readPointer = liveBuffer.readerIndex();
-			try {
-				newFrame = decodeProcessed(ctx, c, replayableBuffer.setBuffer(liveBuffer));
-			} catch (ReplayableError e) {
-				// roll back liveBuffer read to state prior to calling decodeProcessed
-				liveBuffer.readerIndex(readPointer);
-				// No frame returned
+			int frameLength = getFrameLength(ctx, c, liveBuffer);
+			if (frameLength == NOT_FRAMED) {
+				try {
+					newFrame = decodeProcessed(ctx, c, replayableBuffer.setBuffer(liveBuffer));
+				} catch (ReplayableError e) {
+					// roll back liveBuffer read to state prior to calling decodeProcessed
+					liveBuffer.readerIndex(readPointer);
+					// No frame returned
+					newFrame = null;
+				}
+			} else if (frameLength == FRAME_INCOMPLETE || liveBuffer.readableBytes() < frameLength) {
+				// Wait for the rest of the frame rather than decoding a partial frame
 				newFrame = null;
+			} else {
+				newFrame = decodeProcessed(ctx, c, liveBuffer.slice(readPointer, frameLength));
+				liveBuffer.readerIndex(readPointer + frameLength);
 			}
 			
 			if (newFrame != null) {
@@ -159,6 +176,24 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 		locked.set(false);
 	}
 
+	/**
+	 * Gets the length of the frame starting at the reader index of the buffer, without changing the reader index.
+	 * The buffer may be empty.<br>
+	 * <br>
+	 * For length framed streams, decodeProcessed is only called once the whole frame is readable, and is passed a buffer 
+	 * containing just that frame.  This avoids replaying a partial decode each time more bytes arrive.  Otherwise, 
+	 * decodeProcessed is replayed until it completes without running out of bytes.
+	 * 
+	 * @param ctx the channel handler context
+	 * @param channel the channel
+	 * @param buffer the channel buffer
+	 * @return the length of the frame including any length prefix, {@link #FRAME_INCOMPLETE} if more bytes are needed, or {@link #NOT_FRAMED}
+	 * @throws Exception
+	 */
+	protected int getFrameLength(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		return NOT_FRAMED;
+	}
+
 	/**
 	 * This method is the equivalent of the decode method for the standard ReplayingDecoder<br>
 	 * The method call is repeated if decoding causes the ChannelBuffer to run out of bytes<br>
@@ -47,12 +47,14 @@ import org.spout.api.util.SyncedStringMap;
 
 public abstract class Protocol {
 	private static final ConcurrentHashMap<String, Protocol> map = new ConcurrentHashMap<String, Protocol>();
+	private static final long CHUNK_PAYLOAD_CACHE_SIZE = 32 * 1024 * 1024;
 
 	private final SyncedStringMap dynamicPacketLookup;
 	private final CodecLookupService codecLookup;
 	private final HandlerLookupService handlerLookup;
 	private final String name;
 	private final int defaultPort;
+	private final ChunkPayloadCache chunkPayloadCache = new ChunkPayloadCache(CHUNK_PAYLOAD_CACHE_SIZE);
 
 	public Protocol(String name, int defaultPort, CodecLookupService codecLookup, HandlerLookupService handlerLookup) {
 		this.codecLookup = codecLookup;
@@ -99,6 +101,15 @@ public abstract class Protocol {
 		return defaultPort;
 	}
 
+	/**
+	 * Gets the cache of encoded chunk payloads shared by all sessions using this Protocol
+	 *
+	 * @return the chunk payload cache
+	 */
+	public ChunkPayloadCache getChunkPayloadCache() {
+		return chunkPayloadCache;
+	}
+
 	/**
 	 * Register a custom packet with this protocol
 	 *
@@ -150,6 +161,21 @@ public abstract class Protocol {
 	 */
 	public abstract MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException;
 
+	/**
+	 * Gets the length of the message starting at the reader index of the buffer, without changing the reader index.<br>
+	 * <br>
+	 * Protocols where every message starts with a prefix giving its length override this. The decoder then waits until the whole
+	 * message has arrived before decoding it, rather than replaying the decode of a partial message as each part arrives, and
+	 * the buffer passed to {@link #readHeader(ChannelBuffer)} and the codec will only contain that message.
+	 *
+	 * @param buf The buffer to read from, which may not contain the whole length prefix
+	 * @return the length of the message including the length prefix and header, {@link PreprocessReplayingDecoder#FRAME_INCOMPLETE} if more bytes are needed to read the length,
+	 *         or {@link PreprocessReplayingDecoder#NOT_FRAMED} if the protocol is not length framed
+	 */
+	public int getFrameLength(ChannelBuffer buf) {
+		return PreprocessReplayingDecoder.NOT_FRAMED;
+	}
+
 	/**
 	 * Writes a packet header to a new buffer.
 	 *
@@ -159,6 +185,41 @@ public abstract class Protocol {
 	 */
 	public abstract ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data);
 
+	/**
+	 * Gets the maximum length of a packet header written by this protocol.<br>
+	 * <br>
+	 * If this is not negative, the encoder reserves this many bytes at the start of the buffer it
+	 * encodes a message into, and the header is written back into the reserved space by
+	 * {@link #writeHeader(MessageCodec, ChannelBuffer, int)}.
+	 *
+	 * @return the maximum header length, or -1 if headers are only written to a separate buffer
+	 */
+	public int getMaxHeaderLength() {
+		return -1;
+	}
+
+	/**
+	 * Writes a packet header into the space reserved in front of an encoded message.<br>
+	 * <br>
+	 * The message occupies the bytes from dataIndex to the writer index of the buffer. The header
+	 * must end at dataIndex and the reader index of the buffer must be set to the start of the header.
+	 * The default implementation copies the header returned by {@link #writeHeader(MessageCodec, ChannelBuffer)}.
+	 *
+	 * @param codec The codec the message was written with
+	 * @param buffer The buffer holding the encoded message
+	 * @param dataIndex The index of the first byte of the encoded message
+	 * @throws IllegalStateException if the header is longer than the reserved space
+	 */
+	public void writeHeader(MessageCodec<?> codec, ChannelBuffer buffer, int dataIndex) {
+		ChannelBuffer header = writeHeader(codec, buffer.slice(dataIndex, buffer.writerIndex() - dataIndex));
+		int headerIndex = dataIndex - header.readableBytes();
+		if (headerIndex < 0) {
+			throw new IllegalStateException("Header of length " + header.readableBytes() + " does not fit in " + dataIndex + " reserved bytes for protocol " + name);
+		}
+		buffer.setBytes(headerIndex, header);
+		buffer.readerIndex(headerIndex);
+	}
+
 	/**
 	 * Gets a packet for kicking a player
 	 *
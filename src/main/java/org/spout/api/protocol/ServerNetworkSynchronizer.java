@@ -26,7 +26,9 @@
  */
 package org.spout.api.protocol;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.spout.api.entity.Entity;
@@ -42,6 +44,9 @@ import org.spout.api.util.set.concurrent.TSyncIntHashSet;
 public abstract class ServerNetworkSynchronizer extends NetworkSynchronizer {
 
 	protected final static int CHUNKS_PER_TICK = 20;
+	protected final static int CHUNK_BYTES_PER_TICK = 256 * 1024;
+	protected final static long WRITE_BACKLOG_LIMIT = 512 * 1024;
+	protected final static int BLOCK_UPDATE_THRESHOLD = 256;
 
 	protected int viewDistance;
 	protected final int blockMinimumViewDistance;
@@ -51,6 +56,10 @@ public abstract class ServerNetworkSynchronizer extends NetworkSynchronizer {
 	//Holds all entities that have ever been sync'd to this Synchronizer
 	protected final TSyncIntHashSet synchronizedEntities = new TSyncIntHashSet();
 
+	protected final BlockUpdateAccumulator blockUpdates = new BlockUpdateAccumulator(BLOCK_UPDATE_THRESHOLD);
+
+	protected final ChunkSendQueue chunkSendQueue = new ChunkSendQueue(CHUNKS_PER_TICK, CHUNK_BYTES_PER_TICK, WRITE_BACKLOG_LIMIT);
+
 	public ServerNetworkSynchronizer(Session session, int minViewDistance) {
 		super(session);
 		if (player != null) {
@@ -160,6 +169,105 @@ public abstract class ServerNetworkSynchronizer extends NetworkSynchronizer {
 
 	protected abstract Collection<Chunk> doSendChunk(Chunk c);
 
+	/**
+	 * Queues a chunk to be sent by {@link #sendQueuedChunks(Transform)}
+	 *
+	 * @param c the chunk
+	 */
+	public final void queueChunk(Chunk c) {
+		chunkSendQueue.add(c);
+	}
+
+	/**
+	 * Removes a chunk from the send queue, for example when it is no longer in view
+	 *
+	 * @param c the chunk
+	 * @return true if the chunk was queued
+	 */
+	public final boolean unqueueChunk(Chunk c) {
+		return chunkSendQueue.remove(c);
+	}
+
+	/**
+	 * Gets the queue of chunks waiting to be sent, which also holds the send statistics for this session
+	 *
+	 * @return the chunk send queue
+	 */
+	public ChunkSendQueue getChunkSendQueue() {
+		return chunkSendQueue;
+	}
+
+	/**
+	 * Sends the queued chunks nearest to the player, within the budget for this tick, followed by the
+	 * block changes collected during the tick.<br>
+	 * <br>
+	 * This method should be called during the startSnapshot stage of the tick. Chunks which can't be
+	 * sent yet remain in the queue.
+	 *
+	 * @param transform the transform of the player
+	 */
+	protected void sendQueuedChunks(Transform transform) {
+		chunkSendQueue.startTick(transform.getPosition(), transform.forwardVector(), getWriteBacklog());
+		List<Chunk> deferred = null;
+		Chunk c;
+		while ((c = chunkSendQueue.poll()) != null) {
+			if (canSendChunk(c)) {
+				Collection<Chunk> sent = doSendChunk(c);
+				if (sent == null || sent.isEmpty()) {
+					chunkSendQueue.chunkSent();
+				} else {
+					// Other chunks sent along with this one don't need to be sent again
+					for (Chunk s : sent) {
+						if (s != c) {
+							chunkSendQueue.remove(s);
+						}
+					}
+					chunkSendQueue.chunksSent(sent.contains(c) ? sent.size() : sent.size() + 1);
+				}
+			} else {
+				if (deferred == null) {
+					deferred = new ArrayList<Chunk>();
+				}
+				deferred.add(c);
+			}
+		}
+		if (deferred != null) {
+			for (Chunk d : deferred) {
+				chunkSendQueue.add(d);
+			}
+		}
+		flushBlockUpdates();
+	}
+
+	/**
+	 * Gets the number of bytes written to the session which have not yet been sent to the socket.<br>
+	 * <br>
+	 * This is used to reduce the rate chunks are sent at when the connection can't keep up.
+	 *
+	 * @return the write backlog, or 0 if it is not measured
+	 */
+	protected long getWriteBacklog() {
+		return 0;
+	}
+
+	/**
+	 * Gets the encoded payload of a chunk, for use by {@link #doSendChunk(Chunk)}.<br>
+	 * <br>
+	 * The payload is shared with all other sessions using the same protocol, and is only encoded again
+	 * after the {@link Chunk#getModificationVersion()} of the chunk has changed, so the encoder must not include
+	 * anything other than the blocks, light and biomes of the chunk. The returned array must not be modified.
+	 * The length of the payload counts against the chunk byte budget of the tick.
+	 *
+	 * @param c the chunk
+	 * @param encoder the encoder used if there is no payload for the current version of the chunk
+	 * @return the payload
+	 */
+	protected byte[] getChunkPayload(Chunk c, ChunkPayloadCache.PayloadEncoder encoder) {
+		byte[] payload = session.getProtocol().getChunkPayloadCache().get(c, encoder);
+		chunkSendQueue.bytesSent(payload.length);
+		return payload;
+	}
+
 	/**
 	 * Inits a chunk on the client.
 	 *
@@ -233,7 +341,10 @@ public abstract class ServerNetworkSynchronizer extends NetworkSynchronizer {
 	 * Called when a block in a chunk that the player is observing changes.<br>
 	 * <br>
 	 * Note: The coordinates of the block are chunk relative and the world field
-	 * is undefined.
+	 * is undefined.<br>
+	 * <br>
+	 * By default, the change is collected with the other changes to the chunk made during the
+	 * tick and sent by {@link #flushBlockUpdates()}.
 	 *
 	 * @param chunk the chunk
 	 * @param x coordinate
@@ -242,7 +353,56 @@ public abstract class ServerNetworkSynchronizer extends NetworkSynchronizer {
 	 * @param material to send in the update
 	 * @param data to send in the update
 	 */
-	public abstract void updateBlock(Chunk chunk, int x, int y, int z, BlockMaterial material, short data);
+	public void updateBlock(Chunk chunk, int x, int y, int z, BlockMaterial material, short data) {
+		blockUpdates.add(chunk, x, y, z, material.getId(), data);
+	}
+
+	/**
+	 * Sends the block changes collected by {@link #updateBlock(Chunk, int, int, int, BlockMaterial, short)}.<br>
+	 * <br>
+	 * This method is called during the startSnapshot stage of the tick by {@link #sendQueuedChunks(Transform)},
+	 * once all block changes for the tick have been passed to the synchronizer. Changes to chunks which are not
+	 * active are dropped, as the client does not have the chunk. Chunks with more changes than the threshold
+	 * are sent again in full, the changes to all other chunks are passed to {@link #sendBlockUpdates(ChunkBlockUpdates)}.
+	 */
+	public final void flushBlockUpdates() {
+		List<ChunkBlockUpdates> drained = blockUpdates.drain();
+		if (drained.isEmpty()) {
+			return;
+		}
+		Set<Chunk> active = getActiveChunks();
+		for (ChunkBlockUpdates updates : drained) {
+			if (!active.contains(updates.getChunk())) {
+				continue;
+			}
+			if (updates.isOverflowed()) {
+				resendChunk(updates.getChunk());
+			} else {
+				sendBlockUpdates(updates);
+			}
+		}
+	}
+
+	/**
+	 * Sends the changes made to blocks in a chunk during a tick.<br>
+	 * <br>
+	 * Protocols should override this method to send the changes as a single multi-block change message.
+	 * The default implementation sends the whole chunk again.
+	 *
+	 * @param updates the block changes
+	 */
+	protected void sendBlockUpdates(ChunkBlockUpdates updates) {
+		resendChunk(updates.getChunk());
+	}
+
+	/**
+	 * Sends a chunk again, or queues it if it can't be sent yet
+	 */
+	private void resendChunk(Chunk c) {
+		if (sendChunk(c) == null && !canSendChunk(c)) {
+			queueChunk(c);
+		}
+	}
 
 	/**
 	 * Instructs the client to update the entities state and position<br><br>
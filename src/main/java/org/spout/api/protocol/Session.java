@@ -90,9 +90,12 @@ public interface Session {
 	public void send(Message message);
 
 	/**
-	 * Sends a message to the client.
+	 * Sends a message to the client.<br>
+	 * <br>
+	 * Forced messages are always written immediately, even when write coalescing is enabled.
+	 * Any messages already buffered are written first, so a forced message is never sent before messages sent earlier.
 	 *
-	 * @param force if this message is used in the identification stages of communication
+	 * @param force if this message is used in the identification stages of communication, or must not wait for the end of the tick
 	 * @param message The message.
 	 */
 	public void send(boolean force, Message message);
@@ -109,6 +112,33 @@ public interface Session {
 	 * @param messages the messages to send to the client
 	 */
 	public void sendAll(boolean force, Message... messages);
+	/**
+	 * Sets if messages sent to this session are held until the end of the tick.<br>
+	 * <br>
+	 * When enabled, messages which are not forced are buffered and written to the channel
+	 * together by {@link #flushWrites()}, instead of each message being written separately.
+	 * Disabling write coalescing flushes any buffered messages.
+	 *
+	 * @param coalesce true to buffer messages until the end of the tick
+	 * @see SessionWriteBuffer
+	 */
+	public void setWriteCoalescing(boolean coalesce);
+
+	/**
+	 * Gets if messages sent to this session are held until the end of the tick
+	 *
+	 * @return true if write coalescing is enabled
+	 */
+	public boolean isWriteCoalescing();
+
+	/**
+	 * Writes all buffered messages to the channel in a single write.<br>
+	 * <br>
+	 * This is called by the engine at the end of the SNAPSHOT and FINALIZE stages of each tick.
+	 * It does nothing if write coalescing is disabled or no messages are buffered.
+	 */
+	public void flushWrites();
+
 	/**
 	 * Disconnects the player as a kick. This is equivalent to calling disconnect(reason, true)
 	 * @param reason The reason for disconnection
@@ -0,0 +1,160 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+/**
+ * Holds the messages sent to a session during a tick, so that they can be written to the channel together.<br>
+ * <br>
+ * Sessions which coalesce writes add each message to the buffer instead of writing it, and call
+ * {@link #flush(Channel)} at the end of the tick. Forced messages are written with {@link #write(Channel, Message)},
+ * which first flushes the buffer so that a forced message never overtakes messages sent before it.<br>
+ * <br>
+ * A {@link ProcessorSetupMessage} changes how the channel encodes the messages after it, so it is never batched.
+ * It is written on its own, after the messages buffered before it.
+ *
+ * @see Session#setWriteCoalescing(boolean)
+ */
+public class SessionWriteBuffer {
+	private final Object writeLock = new Object();
+	private ArrayList<Message> pending = new ArrayList<Message>();
+	private long flushes = 0;
+	private long messages = 0;
+
+	/**
+	 * Adds a message to the buffer
+	 *
+	 * @param message the message
+	 */
+	public synchronized void add(Message message) {
+		pending.add(message);
+	}
+
+	/**
+	 * Gets the number of messages waiting to be written
+	 *
+	 * @return the number of messages
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Writes all buffered messages to a channel, as a single {@link MessageBatch} unless a {@link ProcessorSetupMessage} was buffered
+	 *
+	 * @param channel the channel
+	 * @return the future for the last write, or null if there were no messages to write
+	 */
+	public ChannelFuture flush(Channel channel) {
+		synchronized (writeLock) {
+			return flushPending(channel);
+		}
+	}
+
+	/**
+	 * Writes a message to a channel immediately, after writing any buffered messages
+	 *
+	 * @param channel the channel
+	 * @param message the message
+	 * @return the future for the write of the message
+	 */
+	public ChannelFuture write(Channel channel, Message message) {
+		synchronized (writeLock) {
+			flushPending(channel);
+			return channel.write(message);
+		}
+	}
+
+	private ChannelFuture flushPending(Channel channel) {
+		ArrayList<Message> toWrite;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return null;
+			}
+			toWrite = pending;
+			pending = new ArrayList<Message>(toWrite.size());
+			messages += toWrite.size();
+		}
+		ChannelFuture future = null;
+		int start = 0;
+		for (int i = 0; i < toWrite.size(); i++) {
+			Message message = toWrite.get(i);
+			if (message instanceof ProcessorSetupMessage) {
+				writeBatch(channel, toWrite, start, i);
+				future = writeMessage(channel, message);
+				start = i + 1;
+			}
+		}
+		ChannelFuture last = writeBatch(channel, toWrite, start, toWrite.size());
+		return last == null ? future : last;
+	}
+
+	private ChannelFuture writeBatch(Channel channel, ArrayList<Message> toWrite, int start, int end) {
+		if (start == end) {
+			return null;
+		} else if (end - start == 1) {
+			return writeMessage(channel, toWrite.get(start));
+		}
+		return writeMessage(channel, new MessageBatch(toWrite.subList(start, end)));
+	}
+
+	private ChannelFuture writeMessage(Channel channel, Message message) {
+		synchronized (this) {
+			flushes++;
+		}
+		return channel.write(message);
+	}
+
+	/**
+	 * Discards all buffered messages, for example when the session is closed
+	 */
+	public synchronized void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * Gets the number of writes of buffered messages
+	 *
+	 * @return the number of writes
+	 */
+	public synchronized long getFlushCount() {
+		return flushes;
+	}
+
+	/**
+	 * Gets the number of buffered messages which have been written
+	 *
+	 * @return the number of messages
+	 */
+	public synchronized long getMessageCount() {
+		return messages;
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.spout.api.component.entity.SceneComponent;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+import org.spout.api.math.Vector3;
+
+/**
+ * Encodes a stream of {@link Transform} updates for one entity as compact deltas.<br>
+ * <br>
+ * Positions are quantized to a fixed precision and sent as the change from the last sent position, using one,
+ * two or four bytes per axis depending on the size of the change. Positions too far from the origin to be quantized
+ * into four bytes are sent as floats. Rotations are sent as the three smallest
+ * components of the quaternion in four bytes. The scale is only sent when it has changed. Parts of the transform
+ * which are not marked as dirty are not sent at all.<br>
+ * <br>
+ * The sender and the receiver each keep a codec with the same precision, the sender calling the encode methods and the
+ * receiver the decode method. The last sent position is tracked in quantized form on both sides, so small movements
+ * never accumulate rounding errors.
+ */
+public class TransformDeltaCodec {
+	private static final int POSITION_BYTE = 0x01;
+	private static final int POSITION_SHORT = 0x02;
+	private static final int POSITION_ABSOLUTE = 0x04;
+	private static final int ROTATION = 0x08;
+	private static final int SCALE = 0x10;
+	private static final int POSITION_FLOAT = 0x20;
+	private static final int POSITION_MASK = POSITION_BYTE | POSITION_SHORT | POSITION_ABSOLUTE | POSITION_FLOAT;
+	private static final int ROTATION_BITS = 10;
+	private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+	private static final float ROTATION_RANGE = (float) (1 / Math.sqrt(2));
+	private final float precision;
+	private boolean initialized = false;
+	private long x;
+	private long y;
+	private long z;
+	private float decodedX;
+	private float decodedY;
+	private float decodedZ;
+	private Quaternion rotation = Quaternion.IDENTITY;
+	private Vector3 scale = Vector3.ONE;
+
+	/**
+	 * Creates a codec
+	 *
+	 * @param precision the size of the smallest position change which is sent, in blocks
+	 */
+	public TransformDeltaCodec(float precision) {
+		if (!(precision > 0)) {
+			throw new IllegalArgumentException("Precision must be positive");
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * Encodes the changes to the transform of an entity, using the dirty flags of its scene component
+	 *
+	 * @param buffer the buffer to write to
+	 * @param scene the scene component of the entity
+	 */
+	public void encode(ChannelBuffer buffer, SceneComponent scene) {
+		encode(buffer, scene.getTransform(), scene.isPositionDirty(), scene.isRotationDirty(), scene.isScaleDirty());
+	}
+
+	/**
+	 * Encodes the whole transform, which the receiver needs before the first delta, for example when the entity is spawned
+	 *
+	 * @param buffer the buffer to write to
+	 * @param transform the transform
+	 */
+	public void encodeFull(ChannelBuffer buffer, Transform transform) {
+		initialized = false;
+		encode(buffer, transform, true, true, true);
+	}
+
+	/**
+	 * Encodes the changes to a transform since it was last encoded
+	 *
+	 * @param buffer the buffer to write to
+	 * @param transform the transform
+	 * @param positionDirty if the position may have changed
+	 * @param rotationDirty if the rotation may have changed
+	 * @param scaleDirty if the scale may have changed
+	 */
+	public void encode(ChannelBuffer buffer, Transform transform, boolean positionDirty, boolean rotationDirty, boolean scaleDirty) {
+		int flags = 0;
+		long dx = 0, dy = 0, dz = 0;
+		Point position = transform.getPosition();
+		if (positionDirty || !initialized) {
+			long qx = quantize(position.getX());
+			long qy = quantize(position.getY());
+			long qz = quantize(position.getZ());
+			// Deltas are only taken between positions which fit in an int, so they can't overflow
+			boolean inRange = fits(qx, qy, qz, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			boolean delta = inRange && initialized && fits(x, y, z, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			if (delta) {
+				dx = qx - x;
+				dy = qy - y;
+				dz = qz - z;
+			}
+			if (!inRange) {
+				flags |= POSITION_FLOAT;
+			} else if (!delta || !fits(dx, dy, dz, Short.MIN_VALUE, Short.MAX_VALUE)) {
+				flags |= POSITION_ABSOLUTE;
+				dx = qx;
+				dy = qy;
+				dz = qz;
+			} else if (fits(dx, dy, dz, Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+				if (dx != 0 || dy != 0 || dz != 0) {
+					flags |= POSITION_BYTE;
+				}
+			} else {
+				flags |= POSITION_SHORT;
+			}
+			x = qx;
+			y = qy;
+			z = qz;
+		}
+		Quaternion newRotation = transform.getRotation();
+		if ((rotationDirty || !initialized) && (!initialized || !newRotation.equals(rotation))) {
+			flags |= ROTATION;
+			rotation = newRotation;
+		}
+		Vector3 newScale = transform.getScale();
+		if ((scaleDirty || !initialized) && (!initialized || !equals(newScale, scale))) {
+			flags |= SCALE;
+			scale = newScale;
+		}
+		initialized = true;
+
+		buffer.writeByte(flags);
+		switch (flags & POSITION_MASK) {
+			case POSITION_BYTE:
+				buffer.writeByte((int) dx);
+				buffer.writeByte((int) dy);
+				buffer.writeByte((int) dz);
+				break;
+			case POSITION_SHORT:
+				buffer.writeShort((int) dx);
+				buffer.writeShort((int) dy);
+				buffer.writeShort((int) dz);
+				break;
+			case POSITION_ABSOLUTE:
+				buffer.writeInt((int) dx);
+				buffer.writeInt((int) dy);
+				buffer.writeInt((int) dz);
+				break;
+			case POSITION_FLOAT:
+				buffer.writeFloat(position.getX());
+				buffer.writeFloat(position.getY());
+				buffer.writeFloat(position.getZ());
+				break;
+		}
+		if ((flags & ROTATION) != 0) {
+			buffer.writeInt(compressRotation(newRotation));
+		}
+		if ((flags & SCALE) != 0) {
+			buffer.writeFloat(newScale.getX());
+			buffer.writeFloat(newScale.getY());
+			buffer.writeFloat(newScale.getZ());
+		}
+	}
+
+	/**
+	 * Decodes a transform update, applying it to the last decoded transform
+	 *
+	 * @param buffer the buffer to read from
+	 * @param world the world the entity is in
+	 * @return the updated transform
+	 */
+	public Transform decode(ChannelBuffer buffer, World world) {
+		int flags = buffer.readUnsignedByte();
+		switch (flags & POSITION_MASK) {
+			case POSITION_BYTE:
+				x += buffer.readByte();
+				y += buffer.readByte();
+				z += buffer.readByte();
+				break;
+			case POSITION_SHORT:
+				x += buffer.readShort();
+				y += buffer.readShort();
+				z += buffer.readShort();
+				break;
+			case POSITION_ABSOLUTE:
+				x = buffer.readInt();
+				y = buffer.readInt();
+				z = buffer.readInt();
+				break;
+			case POSITION_FLOAT:
+				// The quantized position may have saturated, so the floats are used as sent
+				decodedX = buffer.readFloat();
+				decodedY = buffer.readFloat();
+				decodedZ = buffer.readFloat();
+				x = quantize(decodedX);
+				y = quantize(decodedY);
+				z = quantize(decodedZ);
+				break;
+			case 0:
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid transform flags " + flags);
+		}
+		if ((flags & (POSITION_BYTE | POSITION_SHORT | POSITION_ABSOLUTE)) != 0) {
+			decodedX = x * precision;
+			decodedY = y * precision;
+			decodedZ = z * precision;
+		}
+		if ((flags & ROTATION) != 0) {
+			rotation = decompressRotation(buffer.readInt());
+		}
+		if ((flags & SCALE) != 0) {
+			scale = new Vector3(buffer.readFloat(), buffer.readFloat(), buffer.readFloat());
+		}
+		return new Transform(new Point(world, decodedX, decodedY, decodedZ), rotation, scale);
+	}
+
+	/**
+	 * Gets the size of the smallest position change which is sent
+	 *
+	 * @return the precision, in blocks
+	 */
+	public float getPrecision() {
+		return precision;
+	}
+
+	private long quantize(float value) {
+		return Math.round((double) value / precision);
+	}
+
+	/**
+	 * Packs a quaternion into the index of its largest component and the three other components,
+	 * which are always between -1/sqrt(2) and 1/sqrt(2)
+	 */
+	static int compressRotation(Quaternion q) {
+		float[] c = {q.getX(), q.getY(), q.getZ(), q.getW()};
+		float length = (float) Math.sqrt(c[0] * c[0] + c[1] * c[1] + c[2] * c[2] + c[3] * c[3]);
+		int largest = 0;
+		for (int i = 1; i < 4; i++) {
+			if (Math.abs(c[i]) > Math.abs(c[largest])) {
+				largest = i;
+			}
+		}
+		// q and -q are the same rotation, so the largest component can always be made positive
+		float sign = c[largest] < 0 ? -1 : 1;
+		int packed = largest;
+		for (int i = 0; i < 4; i++) {
+			if (i != largest) {
+				float v = sign * c[i] / length;
+				int quantized = Math.round((v + ROTATION_RANGE) / (2 * ROTATION_RANGE) * ROTATION_MAX);
+				packed = (packed << ROTATION_BITS) | Math.max(0, Math.min(ROTATION_MAX, quantized));
+			}
+		}
+		return packed;
+	}
+
+	static Quaternion decompressRotation(int packed) {
+		float[] c = new float[4];
+		int largest = (packed >>> (3 * ROTATION_BITS)) & 0x3;
+		float sum = 0;
+		for (int i = 3; i >= 0; i--) {
+			if (i != largest) {
+				float v = (packed & ROTATION_MAX) * (2 * ROTATION_RANGE) / ROTATION_MAX - ROTATION_RANGE;
+				packed >>>= ROTATION_BITS;
+				c[i] = v;
+				sum += v * v;
+			}
+		}
+		c[largest] = (float) Math.sqrt(Math.max(0, 1 - sum));
+		return new Quaternion(c[0], c[1], c[2], c[3], true);
+	}
+
+	private static boolean fits(long dx, long dy, long dz, long min, long max) {
+		return dx >= min && dx <= max && dy >= min && dy <= max && dz >= min && dz <= max;
+	}
+
+	private static boolean equals(Vector3 a, Vector3 b) {
+		return a.getX() == b.getX() && a.getY() == b.getY() && a.getZ() == b.getZ();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * Base class for the processors which compress and decompress a channel, holding their statistics.<br>
+ * <br>
+ * The compressed stream is made of frames, each starting with a variable length header holding the
+ * length of the frame and whether it is compressed. Messages below the compression threshold are sent
+ * in uncompressed frames. Compressed frames are part of one deflate stream per channel, so
+ * each frame benefits from the data sent before it.
+ *
+ * @see DeflateChannelProcessor
+ * @see InflateChannelProcessor
+ */
+public abstract class ZlibChannelProcessor implements ChannelProcessor {
+	protected static final int COMPRESSED_FLAG = 1;
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+	protected final int capacity;
+	private long bytesIn = 0;
+	private long bytesOut = 0;
+	private long compressedFrames = 0;
+	private long uncompressedFrames = 0;
+	private long cpuTime = 0;
+
+	/**
+	 * @param capacity the size of the buffers used to compress or decompress data
+	 */
+	public ZlibChannelProcessor(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public final ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input) {
+		return write(ctx, input, null);
+	}
+
+	/**
+	 * Gets the number of bytes passed to the processor
+	 *
+	 * @return the number of input bytes
+	 */
+	public synchronized long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * Gets the number of bytes produced by the processor
+	 *
+	 * @return the number of output bytes
+	 */
+	public synchronized long getBytesOut() {
+		return bytesOut;
+	}
+
+	/**
+	 * Gets the size of the compressed stream divided by the size of the uncompressed data, including uncompressed frames and frame headers
+	 *
+	 * @return the compression ratio, or 1 if no data has been processed
+	 */
+	public synchronized double getCompressionRatio() {
+		long compressed = getCompressedBytes();
+		long uncompressed = getUncompressedBytes();
+		return uncompressed == 0 ? 1 : (double) compressed / uncompressed;
+	}
+
+	/**
+	 * Gets the number of frames which were compressed
+	 *
+	 * @return the number of compressed frames
+	 */
+	public synchronized long getCompressedFrames() {
+		return compressedFrames;
+	}
+
+	/**
+	 * Gets the number of frames which were below the threshold and not compressed
+	 *
+	 * @return the number of uncompressed frames
+	 */
+	public synchronized long getUncompressedFrames() {
+		return uncompressedFrames;
+	}
+
+	/**
+	 * Gets the time spent compressing or decompressing data.<br>
+	 * <br>
+	 * This is the CPU time of the processing threads where the JVM supports measuring it, and the elapsed time otherwise.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public synchronized long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * Gets the number of bytes of compressed stream
+	 */
+	protected abstract long getCompressedBytes();
+
+	/**
+	 * Gets the number of bytes of uncompressed data
+	 */
+	protected abstract long getUncompressedBytes();
+
+	protected final void addStatistics(int in, int out, boolean compressed, long time) {
+		bytesIn += in;
+		bytesOut += out;
+		if (compressed) {
+			compressedFrames++;
+			cpuTime += time;
+		} else {
+			uncompressedFrames++;
+		}
+	}
+
+	protected static long getTime() {
+		return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	/**
+	 * Gets a buffer which the given number of bytes can be appended to, copying the buffer if it can't grow
+	 */
+	protected final ChannelBuffer ensureWritable(ChannelHandlerContext ctx, ChannelBuffer buffer, int length) {
+		if (buffer == null) {
+			return ChannelBuffers.dynamicBuffer(Math.max(length, capacity), ctx.getChannel().getConfig().getBufferFactory());
+		} else if (buffer.writableBytes() >= length || buffer instanceof DynamicChannelBuffer) {
+			return buffer;
+		}
+		ChannelBuffer newBuffer = ChannelBuffers.dynamicBuffer(buffer.readableBytes() + Math.max(length, capacity), ctx.getChannel().getConfig().getBufferFactory());
+		newBuffer.writeBytes(buffer);
+		return newBuffer;
+	}
+
+	protected static void writeHeader(ChannelBuffer buffer, int length, boolean compressed) {
+		int header = (length << 1) | (compressed ? COMPRESSED_FLAG : 0);
+		while ((header & ~0x7F) != 0) {
+			buffer.writeByte((header & 0x7F) | 0x80);
+			header >>>= 7;
+		}
+		buffer.writeByte(header);
+	}
+
+	/**
+	 * Reads a frame header, or returns -1 without changing the reader index if the header is incomplete
+	 */
+	protected static int readHeader(ChannelBuffer buffer) {
+		int start = buffer.readerIndex();
+		int header = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buffer.readable()) {
+				buffer.readerIndex(start);
+				return -1;
+			}
+			int b = buffer.readUnsignedByte();
+			header |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return header;
+			}
+		}
+		throw new IllegalStateException("Invalid compressed frame header");
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the async tasks scheduled as long lived.<br/>
+ * <br/>
+ * Long lived tasks are expected to block, such as on database or network I/O. A backend may run them on dedicated threads,
+ * a bounded pool, or lightweight threads where the runtime supports them. Tasks are interrupted when cancelled, so the
+ * backend must run each task on a thread which is not shared with another task while it runs.
+ */
+public interface AsyncTaskBackend extends Executor {
+	/**
+	 * Gets if this backend runs tasks on lightweight threads, so that blocking tasks do not each hold an OS thread
+	 * 
+	 * @return true if lightweight
+	 */
+	public boolean isLightweight();
+
+	/**
+	 * Gets the number of tasks currently running on this backend
+	 * 
+	 * @return the active task count
+	 */
+	public int getActiveCount();
+
+	/**
+	 * Stops accepting new tasks and interrupts the running tasks
+	 */
+	public void shutdown();
+}
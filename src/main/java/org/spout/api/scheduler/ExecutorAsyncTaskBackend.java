@@ -0,0 +1,169 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link AsyncTaskBackend} backed by an {@link ExecutorService}.<br/>
+ * <br/>
+ * {@link #create(String, int)} uses virtual threads when the runtime provides them, and otherwise falls back to a bounded pool of
+ * daemon threads. Long lived tasks are never queued behind each other, so once every thread of the pool is busy the
+pool grows past its bound and a warning is logged. The runtime is checked by reflection so that this class
+ * still loads on older runtimes.
+ */
+public class ExecutorAsyncTaskBackend implements AsyncTaskBackend {
+	private static final Logger LOGGER = Logger.getLogger(ExecutorAsyncTaskBackend.class.getCanonicalName());
+	private final ExecutorService executor;
+	private final boolean lightweight;
+	private final AtomicInteger active = new AtomicInteger(0);
+
+	public ExecutorAsyncTaskBackend(ExecutorService executor, boolean lightweight) {
+		this.executor = executor;
+		this.lightweight = lightweight;
+	}
+
+	/**
+	 * Creates a backend which runs each task on a new virtual thread if supported, or on a bounded pool otherwise
+	 * 
+	 * @param name the prefix for the names of the threads
+	 * @param maxThreads the size of the fallback pool
+	 * @return the backend
+	 */
+	public static ExecutorAsyncTaskBackend create(String name, int maxThreads) {
+		ExecutorService virtual = createVirtualThreadExecutor(name);
+		if (virtual != null) {
+			return new ExecutorAsyncTaskBackend(virtual, true);
+		}
+		return createBounded(name, maxThreads);
+	}
+
+	/**
+	 * Creates a backend which runs tasks on a bounded pool of daemon threads. Idle threads exit after a minute.<br/>
+	 * <br/>
+	 * A task which arrives while every thread is busy is not queued, as it could wait indefinitely behind blocking tasks.
+	 * The bound is instead raised by one thread and a warning is logged.
+	 * 
+	 * @param name the prefix for the names of the threads
+	 * @param maxThreads the size of the pool
+	 * @return the backend
+	 */
+	public static ExecutorAsyncTaskBackend createBounded(final String name, int maxThreads) {
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("The pool must have at least one thread");
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		}, new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				if (executor.isShutdown()) {
+					throw new RejectedExecutionException("The " + name + " pool has been shut down");
+				}
+				synchronized (this) {
+					int threads = executor.getMaximumPoolSize() + 1;
+					executor.setMaximumPoolSize(threads);
+					LOGGER.warning("All long lived task threads in the " + name + " pool are busy, growing the pool to " + threads + " threads");
+				}
+				executor.execute(r);
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return new ExecutorAsyncTaskBackend(executor, false);
+	}
+
+	private static ExecutorService createVirtualThreadExecutor(String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// Virtual threads are a preview feature which has not been enabled
+			return null;
+		}
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				active.incrementAndGet();
+				try {
+					task.run();
+				} catch (Throwable t) {
+					LOGGER.log(Level.SEVERE, "Exception in long lived async task", t);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	@Override
+	public boolean isLightweight() {
+		return lightweight;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values, such as times in ns.<br/>
+ * <br/>
+ * Values are counted in buckets of exponentially increasing width, with each power of two split into 8 buckets.
+ * This keeps the relative error of reported percentiles below 12.5% over the whole range of a long, using a fixed
+ * amount of memory.<br/>
+ * <br/>
+ * This class is not thread safe.
+ */
+public class Histogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int SUB_MASK = SUB_BUCKETS - 1;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long total = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	public Histogram() {
+	}
+
+	/**
+	 * Creates a copy of a histogram
+	 * 
+	 * @param other the histogram to copy
+	 */
+	public Histogram(Histogram other) {
+		add(other);
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * 
+	 * @param value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[getBucket(value)]++;
+		count++;
+		total += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all the values recorded by another histogram to this histogram
+	 * 
+	 * @param other the histogram to add
+	 */
+	public void add(Histogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		total += other.total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Gets the number of recorded values
+	 * 
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the sum of all recorded values
+	 * 
+	 * @return the total
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Gets the smallest recorded value
+	 * 
+	 * @return the minimum, or 0 if no values were recorded
+	 */
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Gets the largest recorded value
+	 * 
+	 * @return the maximum, or 0 if no values were recorded
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets the mean of the recorded values
+	 * 
+	 * @return the mean, or 0 if no values were recorded
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * Gets an upper bound for the given percentile of the recorded values.
+	 * 
+	 * @param percentile between 0 and 100
+	 * @return the percentile, or 0 if no values were recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+		target = Math.max(1, target);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.max(min, Math.min(max, getUpperBound(i)));
+			}
+		}
+		return max;
+	}
+
+	private static int getBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >> shift) & SUB_MASK);
+	}
+
+	private static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket >> SUB_BITS) - 1;
+		long lower = (long) (SUB_BUCKETS + (bucket & SUB_MASK)) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
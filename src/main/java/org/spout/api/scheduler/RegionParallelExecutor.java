@@ -0,0 +1,189 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spout.api.geo.cuboid.Region;
+
+/**
+ * Runs a {@link ParallelRunnable} for a set of Regions on a {@link WorkStealingPool} and records how long each Region took.<br/>
+ * <br/>
+ * Regions are not tied to a thread, so an overloaded Region only holds up the thread running it while idle threads steal the
+ * remaining Regions. If the runnable is a {@link DivisibleParallelRunnable}, a Region which took longer than the split threshold
+ * on the previous run of the same runnable class is divided into parts, so that its work can also be stolen.
+ */
+public class RegionParallelExecutor {
+	private final WorkStealingPool pool;
+	private final long splitThreshold;
+	private final SchedulerClock clock;
+	private final Map<Class<?>, Map<Region, RegionTiming>> timings = Collections.synchronizedMap(new WeakHashMap<Class<?>, Map<Region, RegionTiming>>());
+	private volatile Map<Region, Long> lastTimes = Collections.emptyMap();
+
+	/**
+	 * Creates an executor
+	 * @param pool the pool to run the Region instances on
+	 * @param splitThreshold the execution time, in nanoseconds, above which a divisible Region is split on its next run
+	 */
+	public RegionParallelExecutor(WorkStealingPool pool, long splitThreshold) {
+		this(pool, splitThreshold, SchedulerClock.SYSTEM);
+	}
+
+	/**
+	 * Creates an executor
+	 * @param pool the pool to run the Region instances on
+	 * @param splitThreshold the execution time, in nanoseconds, above which a divisible Region is split on its next run
+	 * @param clock to time the Region instances with, read before and after each part on the thread running it
+	 */
+	public RegionParallelExecutor(WorkStealingPool pool, long splitThreshold, SchedulerClock clock) {
+		this.pool = pool;
+		this.splitThreshold = splitThreshold;
+		this.clock = clock;
+	}
+
+	/**
+	 * Runs an instance of the runnable for each Region and waits for all of them to complete.<br/>
+	 * <br/>
+	 * Whether a Region is divided depends only on the previous run of a runnable of the same class.
+	 * @param runnable to run
+	 * @param task the parent task
+	 * @param regions to run the runnable for
+	 * @return the execution time of each Region in nanoseconds, the time of the slowest part for divided Regions
+	 * @throws InterruptedException if interrupted while waiting for other threads
+	 */
+	public Map<Region, Long> execute(ParallelRunnable runnable, Task task, Collection<? extends Region> regions) throws InterruptedException {
+		Map<Region, RegionTiming> previous = timings.get(runnable.getClass());
+		Map<Region, RegionTiming> current = new HashMap<Region, RegionTiming>(regions.size() * 2);
+		List<Runnable> parts = new ArrayList<Runnable>(regions.size());
+		for (Region region : regions) {
+			int partCount = getPartCount(previous == null ? null : previous.get(region));
+			if (partCount > 1 && runnable instanceof DivisibleParallelRunnable) {
+				ParallelRunnable[] divided = ((DivisibleParallelRunnable) runnable).divide(region, task, partCount);
+				RegionTiming timing = new RegionTiming(divided.length);
+				current.put(region, timing);
+				for (ParallelRunnable part : divided) {
+					parts.add(new TimedRunnable(part, timing, clock));
+				}
+			} else {
+				RegionTiming timing = new RegionTiming(1);
+				current.put(region, timing);
+				parts.add(new TimedRunnable(runnable.newInstance(region, task), timing, clock));
+			}
+		}
+
+		pool.invokeAll(parts);
+
+		Map<Region, Long> result = new HashMap<Region, Long>(current.size() * 2);
+		for (Map.Entry<Region, RegionTiming> e : current.entrySet()) {
+			result.put(e.getKey(), e.getValue().maxTime.get());
+		}
+		result = Collections.unmodifiableMap(result);
+		timings.put(runnable.getClass(), current);
+		lastTimes = result;
+		return result;
+	}
+
+	/**
+	 * Gets the execution time of each Region from the most recent run
+	 * @return the Region execution times in nanoseconds
+	 */
+	public Map<Region, Long> getLastExecutionTimes() {
+		return lastTimes;
+	}
+
+	/**
+	 * Gets the longest Region execution time from the most recent run, which bounds how long the run took
+	 * @return the time in nanoseconds
+	 */
+	public long getLastMaxExecutionTime() {
+		long max = 0;
+		for (Long time : lastTimes.values()) {
+			max = Math.max(max, time);
+		}
+		return max;
+	}
+
+	private int getPartCount(RegionTiming previous) {
+		if (previous == null || splitThreshold <= 0) {
+			return 1;
+		}
+		// The work of a divided Region is estimated from its slowest part, so the part count can fall again as the load drops
+		long estimate = previous.maxTime.get() * previous.parts;
+		if (estimate <= splitThreshold) {
+			return 1;
+		}
+		long parts = (estimate + splitThreshold - 1) / splitThreshold;
+		return (int) Math.min(parts, pool.getParallelism());
+	}
+
+	private static class RegionTiming {
+		private final int parts;
+		private final AtomicLong maxTime = new AtomicLong();
+
+		public RegionTiming(int parts) {
+			this.parts = parts;
+		}
+
+		public void record(long time) {
+			long max;
+			while ((max = maxTime.get()) < time) {
+				if (maxTime.compareAndSet(max, time)) {
+					break;
+				}
+			}
+		}
+	}
+
+	private static class TimedRunnable implements Runnable {
+		private final Runnable runnable;
+		private final RegionTiming timing;
+		private final SchedulerClock clock;
+
+		public TimedRunnable(Runnable runnable, RegionTiming timing, SchedulerClock clock) {
+			this.runnable = runnable;
+			this.timing = timing;
+			this.clock = clock;
+		}
+
+		@Override
+		public void run() {
+			long start = clock.nanoTime();
+			try {
+				runnable.run();
+			} finally {
+				timing.record(clock.nanoTime() - start);
+			}
+		}
+	}
+}
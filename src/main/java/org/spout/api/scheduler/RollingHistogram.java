@@ -0,0 +1,122 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread safe {@link Histogram} of the values recorded over a sliding window of time.<br/>
+ * <br/>
+ * The window is split into a number of slots, and the oldest slot is discarded each time a slot length passes.
+ */
+public class RollingHistogram {
+	private final SchedulerClock clock;
+	private final long slotLength;
+	private final Histogram[] slots;
+	private long currentSlot;
+
+	/**
+	 * Creates a rolling histogram using the system clock
+	 * 
+	 * @param window the length of the window
+	 * @param unit the unit of the window length
+	 * @param slots the number of slots to split the window into
+	 */
+	public RollingHistogram(long window, TimeUnit unit, int slots) {
+		this(SchedulerClock.SYSTEM, window, unit, slots);
+	}
+
+	/**
+	 * Creates a rolling histogram
+	 * 
+	 * @param clock to read the time from
+	 * @param window the length of the window
+	 * @param unit the unit of the window length
+	 * @param slots the number of slots to split the window into
+	 */
+	public RollingHistogram(SchedulerClock clock, long window, TimeUnit unit, int slots) {
+		if (slots <= 0 || window <= 0) {
+			throw new IllegalArgumentException("Window length and slot count must be positive");
+		}
+		this.clock = clock;
+		this.slotLength = Math.max(1, unit.toNanos(window) / slots);
+		this.slots = new Histogram[slots];
+		for (int i = 0; i < slots; i++) {
+			this.slots[i] = new Histogram();
+		}
+		this.currentSlot = clock.nanoTime() / slotLength;
+	}
+
+	/**
+	 * Records a value
+	 * 
+	 * @param value to record
+	 */
+	public synchronized void record(long value) {
+		rotate();
+		slots[getIndex(currentSlot)].record(value);
+	}
+
+	/**
+	 * Gets a histogram of the values recorded within the window
+	 * 
+	 * @return a copy of the values in the window
+	 */
+	public synchronized Histogram getSnapshot() {
+		rotate();
+		Histogram snapshot = new Histogram();
+		for (Histogram slot : slots) {
+			snapshot.add(slot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public synchronized void reset() {
+		for (Histogram slot : slots) {
+			slot.reset();
+		}
+	}
+
+	private void rotate() {
+		long slot = clock.nanoTime() / slotLength;
+		long expired = Math.min(slots.length, slot - currentSlot);
+		for (long i = 1; i <= expired; i++) {
+			slots[getIndex(currentSlot + i)].reset();
+		}
+		if (slot > currentSlot) {
+			currentSlot = slot;
+		}
+	}
+
+	private int getIndex(long slot) {
+		int index = (int) (slot % slots.length);
+		return index < 0 ? index + slots.length : index;
+	}
+}
@@ -26,6 +26,7 @@
  */
 package org.spout.api.scheduler;
 
+import java.util.Collection;
 import java.util.concurrent.Callable;
 
 import org.spout.api.plugin.Plugin;
@@ -67,6 +68,86 @@ public interface Scheduler extends TaskManager {
 	@Threadsafe
 	public boolean isServerOverloaded();
 	
+	/**
+	 * Sets the time per tick which sync tasks may use before lower priority tasks are deferred to later ticks.<br>
+	 * <br>
+	 * Tasks which have been deferred for the maximum time allowed by their {@link TaskPriority} are run regardless of the budget.
+	 *
+	 * @param budget the budget in ms, or a value <= 0 to run all sync tasks every tick
+	 */
+	@Threadsafe
+	public void setSyncTaskBudget(long budget);
+
+	/**
+	 * Gets the time per tick which sync tasks may use before lower priority tasks are deferred to later ticks.
+	 *
+	 * @return the budget in ms, or a value <= 0 if sync tasks are not budgeted
+	 * @see #setSyncTaskBudget(long)
+	 */
+	@Threadsafe
+	public long getSyncTaskBudget();
+
+	/**
+	 * Schedules a sync task which may yield when the tick's sync task budget runs out, and continue in a later tick.
+	 *
+	 * @param plugin the owner of the task
+	 * @param task the task to execute
+	 * @param priority the priority of the task
+	 * @return the task
+	 */
+	@Threadsafe
+	public Task scheduleSyncTimeSlicedTask(Object plugin, TimeSlicedTask task, TaskPriority priority);
+
+	/**
+	 * Runs the body for each item across all scheduler threads, and returns once every item is complete.<br>
+	 * <br>
+	 * This can be used within a stage to spread bulk work, such as scans over every region, without scheduling a task per item.
+	 *
+	 * @param items the items
+	 * @param body the loop body, which may be called concurrently for different items
+	 * @throws InterruptedException if interrupted while waiting for the items to complete
+	 * @throws RuntimeException wrapping the first exception thrown by the body, once every item has been attempted
+	 */
+	public <T> void parallelFor(Collection<? extends T> items, ParallelForBody<? super T> body) throws InterruptedException;
+
+	/**
+	 * Schedules a parallel for loop to run during the next occurrence of a stage.<br>
+	 * <br>
+	 * The stage does not end until every item is complete, so the results can be used from the next stage onwards.
+	 *
+	 * @param stage the stage, one of the {@link TickStage} constants
+	 * @param items the items
+	 * @param body the loop body, which may be called concurrently for different items
+	 */
+	@Threadsafe
+	public <T> void scheduleStageParallelFor(int stage, Collection<? extends T> items, ParallelForBody<? super T> body);
+
+	/**
+	 * Sets the backend which runs async tasks scheduled as long lived.<br>
+	 * <br>
+	 * This allows blocking tasks to run on lightweight threads, or a bounded pool, rather than a dedicated thread each.
+	 *
+	 * @param backend the backend, or null to use a dedicated thread for each long lived task
+	 */
+	@Threadsafe
+	public void setLongLivedTaskBackend(AsyncTaskBackend backend);
+
+	/**
+	 * Gets the backend which runs async tasks scheduled as long lived.
+	 *
+	 * @return the backend, or null if each long lived task has a dedicated thread
+	 */
+	@Threadsafe
+	public AsyncTaskBackend getLongLivedTaskBackend();
+
+	/**
+	 * Gets the watchdog which captures the stack traces of sync tasks that run for too long.
+	 *
+	 * @return the sync task watchdog
+	 */
+	@Threadsafe
+	public SyncTaskWatchdog getSyncTaskWatchdog();
+
 	/**
 	 * Runs a Runnable during a safe moment in the tick.  This method locks the snapshot lock while running the task.
 	 * 
@@ -0,0 +1,368 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SnapshotLock} which records how long each plugin holds the lock, and how long the snapshot writer waits for it.<br/>
+ * <br/>
+ * The snapshot writer calls {@link #writeLock()} at {@link TickStage#PRESNAPSHOT} and {@link #writeUnlock()} once the snapshot is complete.
+ * While the writer is waiting, new readers block, except for threads which already hold a read lock. Leases obtained from
+ * {@link #readLock(Object, long, TimeUnit)} are revoked once their time has passed, so the writer waits for them for no longer than that.
+ */
+public class SimpleSnapshotLock implements SnapshotLock {
+	private final SchedulerClock clock;
+	private final ThreadLocal<LinkedList<Hold>> threadHolds = new ThreadLocal<LinkedList<Hold>>() {
+		@Override
+		protected LinkedList<Hold> initialValue() {
+			return new LinkedList<Hold>();
+		}
+	};
+	private final Set<Lease> leases = new HashSet<Lease>();
+	private final Map<Object, PluginStatistics> statistics = new IdentityHashMap<Object, PluginStatistics>();
+	private final Histogram writerWaitTimes = new Histogram();
+	private int readers = 0;
+	private boolean writeLocked = false;
+	private boolean writerWaiting = false;
+	private long writerStart = 0;
+
+	public SimpleSnapshotLock() {
+		this(SchedulerClock.SYSTEM);
+	}
+
+	public SimpleSnapshotLock(SchedulerClock clock) {
+		this.clock = clock;
+	}
+
+	@Override
+	public void readLock(Object plugin) {
+		LinkedList<Hold> holds = threadHolds.get();
+		synchronized (this) {
+			boolean interrupted = false;
+			while (isReadBlocked(holds)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			readers++;
+			acquired(plugin);
+			holds.addLast(new Hold(plugin, clock.nanoTime()));
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public boolean readTryLock(Object plugin) {
+		LinkedList<Hold> holds = threadHolds.get();
+		synchronized (this) {
+			if (isReadBlocked(holds)) {
+				return false;
+			}
+			readers++;
+			acquired(plugin);
+			holds.addLast(new Hold(plugin, clock.nanoTime()));
+			return true;
+		}
+	}
+
+	@Override
+	public SnapshotReadLease readLock(Object plugin, long time, TimeUnit unit) {
+		LinkedList<Hold> holds = threadHolds.get();
+		synchronized (this) {
+			boolean interrupted = false;
+			while (isReadBlocked(holds)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			long now = clock.nanoTime();
+			Lease lease = new Lease(plugin, now, now + unit.toNanos(time));
+			leases.add(lease);
+			acquired(plugin);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return lease;
+		}
+	}
+
+	@Override
+	public void readUnlock(Object plugin) {
+		LinkedList<Hold> holds = threadHolds.get();
+		Hold hold = null;
+		for (int i = holds.size() - 1; i >= 0; i--) {
+			if (holds.get(i).plugin == plugin) {
+				hold = holds.remove(i);
+				break;
+			}
+		}
+		if (hold == null) {
+			throw new IllegalMonitorStateException("Plugin " + plugin + " does not hold a read lock on this thread");
+		}
+		synchronized (this) {
+			readers--;
+			released(plugin, hold.start, clock.nanoTime());
+			notifyAll();
+		}
+	}
+
+	@Override
+	public synchronized boolean isWriteLocked() {
+		return writeLocked;
+	}
+
+	/**
+	 * Locks the snapshot for writing, waiting for all readers to release the lock and revoking leases which have run out of time
+	 */
+	public void writeLock() {
+		synchronized (this) {
+			boolean interrupted = false;
+			writerWaiting = true;
+			writerStart = clock.nanoTime();
+			while (true) {
+				long now = clock.nanoTime();
+				long nextDeadline = Long.MAX_VALUE;
+				for (Lease lease : new ArrayList<Lease>(leases)) {
+					if (now >= lease.deadline) {
+						lease.revoked = true;
+						leases.remove(lease);
+						getStatistics(lease.plugin).revocations++;
+						released(lease.plugin, lease.start, now);
+					} else {
+						nextDeadline = Math.min(nextDeadline, lease.deadline);
+					}
+				}
+				if (readers == 0 && leases.isEmpty()) {
+					break;
+				}
+				try {
+					if (nextDeadline == Long.MAX_VALUE) {
+						wait();
+					} else {
+						long remaining = nextDeadline - now;
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			writerWaiting = false;
+			writeLocked = true;
+			writerWaitTimes.record(clock.nanoTime() - writerStart);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Releases the write lock, allowing readers to lock the snapshot again
+	 */
+	public synchronized void writeUnlock() {
+		if (!writeLocked) {
+			throw new IllegalMonitorStateException("The snapshot is not write locked");
+		}
+		writeLocked = false;
+		notifyAll();
+	}
+
+	/**
+	 * Gets a histogram of the time the snapshot writer waited for readers to release the lock, in ns
+	 * 
+	 * @return a copy of the writer wait times
+	 */
+	public synchronized Histogram getWriterWaitTimes() {
+		return new Histogram(writerWaitTimes);
+	}
+
+	/**
+	 * Gets histograms of how long each plugin held read locks, in ns
+	 * 
+	 * @return a copy of the hold times, by plugin
+	 */
+	public synchronized Map<Object, Histogram> getHoldTimes() {
+		Map<Object, Histogram> holdTimes = new HashMap<Object, Histogram>();
+		for (Map.Entry<Object, PluginStatistics> e : statistics.entrySet()) {
+			holdTimes.put(e.getKey(), new Histogram(e.getValue().holdTimes));
+		}
+		return holdTimes;
+	}
+
+	/**
+	 * Gets the total time each plugin kept the snapshot writer waiting, in ns.<br/>
+	 * <br/>
+	 * A plugin is charged from when the writer starts waiting until it releases its lock, so the plugin with the highest delay
+	 * is the one which held up the snapshot.
+	 * 
+	 * @return the delays, by plugin
+	 */
+	public synchronized Map<Object, Long> getSnapshotDelays() {
+		Map<Object, Long> delays = new HashMap<Object, Long>();
+		for (Map.Entry<Object, PluginStatistics> e : statistics.entrySet()) {
+			delays.put(e.getKey(), e.getValue().snapshotDelay);
+		}
+		return delays;
+	}
+
+	/**
+	 * Gets the number of leases revoked from each plugin for running out of time
+	 * 
+	 * @return the revocation counts, by plugin
+	 */
+	public synchronized Map<Object, Integer> getRevocations() {
+		Map<Object, Integer> revocations = new HashMap<Object, Integer>();
+		for (Map.Entry<Object, PluginStatistics> e : statistics.entrySet()) {
+			revocations.put(e.getKey(), e.getValue().revocations);
+		}
+		return revocations;
+	}
+
+	/**
+	 * Gets the plugins which currently hold read locks or leases
+	 * 
+	 * @return the plugins
+	 */
+	public synchronized List<Object> getHolders() {
+		List<Object> holders = new ArrayList<Object>();
+		for (Map.Entry<Object, PluginStatistics> e : statistics.entrySet()) {
+			if (e.getValue().held > 0) {
+				holders.add(e.getKey());
+			}
+		}
+		return holders;
+	}
+
+	/**
+	 * Clears all recorded statistics
+	 */
+	public synchronized void resetStatistics() {
+		writerWaitTimes.reset();
+		for (PluginStatistics s : statistics.values()) {
+			s.holdTimes.reset();
+			s.snapshotDelay = 0;
+			s.revocations = 0;
+		}
+	}
+
+	private boolean isReadBlocked(LinkedList<Hold> holds) {
+		// A thread which already holds the lock may lock it again, or the writer would deadlock
+		return writeLocked || (writerWaiting && holds.isEmpty());
+	}
+
+	private void acquired(Object plugin) {
+		getStatistics(plugin).held++;
+	}
+
+	private void released(Object plugin, long start, long now) {
+		PluginStatistics s = getStatistics(plugin);
+		s.held--;
+		s.holdTimes.record(now - start);
+		if (writerWaiting) {
+			s.snapshotDelay += now - Math.max(start, writerStart);
+		}
+	}
+
+	private PluginStatistics getStatistics(Object plugin) {
+		PluginStatistics s = statistics.get(plugin);
+		if (s == null) {
+			s = new PluginStatistics();
+			statistics.put(plugin, s);
+		}
+		return s;
+	}
+
+	private static class PluginStatistics {
+		private final Histogram holdTimes = new Histogram();
+		private long snapshotDelay = 0;
+		private int revocations = 0;
+		private int held = 0;
+	}
+
+	private static class Hold {
+		private final Object plugin;
+		private final long start;
+
+		public Hold(Object plugin, long start) {
+			this.plugin = plugin;
+			this.start = start;
+		}
+	}
+
+	private class Lease implements SnapshotReadLease {
+		private final Object plugin;
+		private final long start;
+		private final long deadline;
+		private boolean revoked = false;
+		private boolean released = false;
+
+		public Lease(Object plugin, long start, long deadline) {
+			this.plugin = plugin;
+			this.start = start;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public Object getPlugin() {
+			return plugin;
+		}
+
+		@Override
+		public boolean isValid() {
+			synchronized (SimpleSnapshotLock.this) {
+				return !revoked && !released;
+			}
+		}
+
+		@Override
+		public void release() {
+			synchronized (SimpleSnapshotLock.this) {
+				if (revoked || released) {
+					return;
+				}
+				released = true;
+				leases.remove(this);
+				released(plugin, start, clock.nanoTime());
+				SimpleSnapshotLock.this.notifyAll();
+			}
+		}
+	}
+}
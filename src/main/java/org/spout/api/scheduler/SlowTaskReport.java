@@ -0,0 +1,94 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+/**
+ * A report of a sync task which ran for longer than the threshold of a {@link SyncTaskWatchdog}
+ */
+public class SlowTaskReport {
+	private final int taskId;
+	private final Object owner;
+	private final long stallTime;
+	private final StackTraceElement[] stackTrace;
+	private volatile long runTime = -1;
+
+	public SlowTaskReport(int taskId, Object owner, long stallTime, StackTraceElement[] stackTrace) {
+		this.taskId = taskId;
+		this.owner = owner;
+		this.stallTime = stallTime;
+		this.stackTrace = stackTrace;
+	}
+
+	/**
+	 * Gets the id of the task
+	 * 
+	 * @return the task id
+	 */
+	public int getTaskId() {
+		return taskId;
+	}
+
+	/**
+	 * Gets the owner of the task
+	 * 
+	 * @return the owner
+	 */
+	public Object getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets how long the task had been running when the stack trace was captured
+	 * 
+	 * @return the time in ns
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	/**
+	 * Gets the stack trace of the main thread, captured while the task was running
+	 * 
+	 * @return the stack trace
+	 */
+	public StackTraceElement[] getStackTrace() {
+		return stackTrace;
+	}
+
+	/**
+	 * Gets the total run time of the task
+	 * 
+	 * @return the time in ns, or -1 if the task is still running
+	 */
+	public long getRunTime() {
+		return runTime;
+	}
+
+	protected void setRunTime(long runTime) {
+		this.runTime = runTime;
+	}
+}
@@ -26,6 +26,7 @@
  */
 package org.spout.api.scheduler;
 
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class to allow non-pulsed threads to synchronize with the pulsed thread
@@ -52,6 +53,21 @@ public interface SnapshotLock {
 	 */
 	public boolean readTryLock(Object plugin);
 
+	/**
+	 * Readlocks the stable snapshot for a bounded time.
+	 *
+	 * Once the snapshot write phase is waiting for the lock, the lease is
+	 * revoked when the time has passed, rather than holding up the tick.
+	 * Holders should check {@link SnapshotReadLease#isValid()} between
+	 * reads, and stop reading once it is revoked.
+	 *
+	 * @param plugin the plugin
+	 * @param time the maximum time to hold the lock
+	 * @param unit the unit of the time
+	 * @return the lease, which must be released
+	 */
+	public SnapshotReadLease readLock(Object plugin, long time, TimeUnit unit);
+
 	/**
 	 * Releases a previous readlock
 	 *
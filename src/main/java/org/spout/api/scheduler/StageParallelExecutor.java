@@ -0,0 +1,169 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs parallel for loops across a {@link WorkStealingPool}, joining before the caller continues.<br/>
+ * <br/>
+ * Loops may be run immediately with {@link #parallelFor(Collection, ParallelForBody)}, or submitted for a {@link TickStage}
+ * with {@link #submit(int, Collection, ParallelForBody)}. The engine calls {@link #runStage(int)} during each stage, which runs
+ * every loop submitted for that stage as one batch, so the stage does not end until they are all complete.<br/>
+ * <br/>
+ * Items are split into several chunks per pool thread, so that idle threads can steal work from threads with slow items.<br/>
+ * <br/>
+ * If the body throws, the remaining items of its chunk are skipped, but the other chunks still run. The first exception is
+ * rethrown, wrapped in a RuntimeException, once every chunk has completed.
+ */
+public class StageParallelExecutor {
+	private static final int CHUNKS_PER_THREAD = 4;
+	private final WorkStealingPool pool;
+	private final ConcurrentLinkedQueue<Job<?>>[] stageJobs;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public StageParallelExecutor(WorkStealingPool pool) {
+		this.pool = pool;
+		this.stageJobs = new ConcurrentLinkedQueue[32];
+		for (int i = 0; i < stageJobs.length; i++) {
+			stageJobs[i] = new ConcurrentLinkedQueue<Job<?>>();
+		}
+	}
+
+	/**
+	 * Runs the body for each item across the pool, and waits for all items to complete
+	 * 
+	 * @param items the items
+	 * @param body the loop body
+	 * @throws InterruptedException if interrupted while waiting for the loop to complete
+	 * @throws RuntimeException wrapping the first exception thrown by the body
+	 */
+	public <T> void parallelFor(Collection<? extends T> items, ParallelForBody<? super T> body) throws InterruptedException {
+		List<Runnable> chunks = new ArrayList<Runnable>();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		new Job<T>(items, body).split(pool.getParallelism() * CHUNKS_PER_THREAD, chunks, failure);
+		invokeAll(chunks, failure);
+	}
+
+	/**
+	 * Submits a loop to be run during the next {@link #runStage(int)} call for the stage
+	 * 
+	 * @param stage the stage, one of the {@link TickStage} constants
+	 * @param items the items
+	 * @param body the loop body
+	 */
+	public <T> void submit(int stage, Collection<? extends T> items, ParallelForBody<? super T> body) {
+		stageJobs[getIndex(stage)].add(new Job<T>(new ArrayList<T>(items), body));
+	}
+
+	/**
+	 * Runs all loops submitted for the stage, and waits for them to complete
+	 * 
+	 * @param stage the stage, one of the {@link TickStage} constants
+	 * @return the number of loops which were run
+	 * @throws InterruptedException if interrupted while waiting for the loops to complete
+	 * @throws RuntimeException wrapping the first exception thrown by the body of any of the loops
+	 */
+	public int runStage(int stage) throws InterruptedException {
+		ConcurrentLinkedQueue<Job<?>> queue = stageJobs[getIndex(stage)];
+		List<Job<?>> jobs = new ArrayList<Job<?>>();
+		Job<?> job;
+		while ((job = queue.poll()) != null) {
+			jobs.add(job);
+		}
+		if (jobs.isEmpty()) {
+			return 0;
+		}
+		List<Runnable> chunks = new ArrayList<Runnable>();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		int chunksPerJob = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD / jobs.size());
+		for (Job<?> j : jobs) {
+			j.split(chunksPerJob, chunks, failure);
+		}
+		invokeAll(chunks, failure);
+		return jobs.size();
+	}
+
+	/**
+	 * Gets the number of loops waiting for a stage
+	 * 
+	 * @param stage the stage
+	 * @return the number of loops
+	 */
+	public int getPendingCount(int stage) {
+		return stageJobs[getIndex(stage)].size();
+	}
+
+	private void invokeAll(List<Runnable> chunks, AtomicReference<Throwable> failure) throws InterruptedException {
+		pool.invokeAll(chunks);
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new RuntimeException("Exception in parallel for loop body", t);
+		}
+	}
+
+	private static int getIndex(int stage) {
+		if (Integer.bitCount(stage) != 1) {
+			throw new IllegalArgumentException("A single stage must be given, got " + TickStage.getAllStages(stage));
+		}
+		return Integer.numberOfTrailingZeros(stage);
+	}
+
+	private static class Job<T> {
+		private final List<? extends T> items;
+		private final ParallelForBody<? super T> body;
+
+		public Job(Collection<? extends T> items, ParallelForBody<? super T> body) {
+			this.items = items instanceof List ? (List<? extends T>) items : new ArrayList<T>(items);
+			this.body = body;
+		}
+
+		public void split(int chunks, List<Runnable> out, final AtomicReference<Throwable> failure) {
+			int size = items.size();
+			chunks = Math.min(chunks, size);
+			for (int i = 0; i < chunks; i++) {
+				final List<? extends T> chunk = items.subList(i * size / chunks, (i + 1) * size / chunks);
+				out.add(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (T item : chunk) {
+								body.run(item);
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						}
+					}
+				});
+			}
+		}
+	}
+}
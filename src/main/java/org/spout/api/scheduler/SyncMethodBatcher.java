@@ -0,0 +1,148 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spout.api.util.future.SimpleFuture;
+
+/**
+ * Batches calls to be run on the main thread.<br/>
+ * <br/>
+ * {@link TaskManager#callSyncMethod(Object, Callable, TaskPriority)} schedules a task per call. Plugins which make many main
+ * thread calls from async threads can instead queue them here. Calls are queued from any thread, and a single sync task drains
+ * the queue once per tick, completing the futures as it goes.
+ */
+public class SyncMethodBatcher {
+	private final TaskManager manager;
+	private final Object plugin;
+	private final TaskPriority priority;
+	private final ConcurrentLinkedQueue<Call<?>> calls = new ConcurrentLinkedQueue<Call<?>>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates a batcher which drains calls at {@link TaskPriority#CRITICAL} priority
+	 * 
+	 * @param manager the task manager to schedule the drain task with
+	 * @param plugin the owner of the drain task
+	 */
+	public SyncMethodBatcher(TaskManager manager, Object plugin) {
+		this(manager, plugin, TaskPriority.CRITICAL);
+	}
+
+	/**
+	 * Creates a batcher
+	 * 
+	 * @param manager the task manager to schedule the drain task with
+	 * @param plugin the owner of the drain task
+	 * @param priority the priority of the drain task
+	 */
+	public SyncMethodBatcher(TaskManager manager, Object plugin, TaskPriority priority) {
+		this.manager = manager;
+		this.plugin = plugin;
+		this.priority = priority;
+	}
+
+	/**
+	 * Queues a call to be run on the main thread
+	 * 
+	 * @param callable the call
+	 * @return a future for the result of the call
+	 */
+	public <T> Future<T> call(Callable<T> callable) {
+		Call<T> call = new Call<T>(callable);
+		calls.add(call);
+		pending.incrementAndGet();
+		if (scheduled.compareAndSet(false, true)) {
+			manager.scheduleSyncDelayedTask(plugin, drainTask, priority);
+		}
+		return call.future;
+	}
+
+	/**
+	 * Runs the calls which are queued. Calls queued while draining are left for the next drain.<br/>
+	 * <br/>
+	 * This is called by the drain task, and should only be called from the main thread.
+	 * 
+	 * @return the number of calls which were run
+	 */
+	public int drain() {
+		scheduled.set(false);
+		int count = pending.get();
+		int run = 0;
+		Call<?> call;
+		while (run < count && (call = calls.poll()) != null) {
+			pending.decrementAndGet();
+			call.run();
+			run++;
+		}
+		if (pending.get() > 0 && scheduled.compareAndSet(false, true)) {
+			manager.scheduleSyncDelayedTask(plugin, drainTask, priority);
+		}
+		return run;
+	}
+
+	/**
+	 * Gets the number of calls waiting to be run
+	 * 
+	 * @return the number of calls
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	private static class Call<T> {
+		private final Callable<T> callable;
+		private final SimpleFuture<T> future = new SimpleFuture<T>();
+
+		public Call(Callable<T> callable) {
+			this.callable = callable;
+		}
+
+		public void run() {
+			if (future.isCancelled()) {
+				return;
+			}
+			try {
+				future.setResult(callable.call());
+			} catch (Throwable t) {
+				future.setThrowable(t);
+			}
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Captures the stack trace of any sync task which runs for longer than a threshold.<br/>
+ * <br/>
+ * The thread running sync tasks calls {@link #taskStarted(Task)} and {@link #taskFinished()} around each task.
+ * A daemon thread started by {@link #start()} checks the running task, and captures the stack of the thread while
+ * the task is still stalled. Reports are kept until polled, up to a maximum count.
+ */
+public class SyncTaskWatchdog {
+	private final SchedulerClock clock;
+	private final int maxReports;
+	private final ConcurrentLinkedQueue<SlowTaskReport> reports = new ConcurrentLinkedQueue<SlowTaskReport>();
+	private final AtomicInteger reportCount = new AtomicInteger(0);
+	private volatile long threshold;
+	private volatile Execution current = null;
+	private volatile Thread thread = null;
+
+	/**
+	 * Creates a watchdog using the system clock
+	 * 
+	 * @param threshold the run time after which the stack of a task is captured
+	 * @param unit the unit of the threshold
+	 */
+	public SyncTaskWatchdog(long threshold, TimeUnit unit) {
+		this(SchedulerClock.SYSTEM, threshold, unit, 100);
+	}
+
+	/**
+	 * Creates a watchdog
+	 * 
+	 * @param clock to read the time from
+	 * @param threshold the run time after which the stack of a task is captured
+	 * @param unit the unit of the threshold
+	 * @param maxReports the maximum number of reports to keep, older reports are discarded
+	 */
+	public SyncTaskWatchdog(SchedulerClock clock, long threshold, TimeUnit unit, int maxReports) {
+		this.clock = clock;
+		this.maxReports = maxReports;
+		setThreshold(threshold, unit);
+	}
+
+	/**
+	 * Sets the run time after which the stack of a task is captured
+	 * 
+	 * @param threshold the threshold
+	 * @param unit the unit of the threshold
+	 */
+	public void setThreshold(long threshold, TimeUnit unit) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("Threshold must be positive");
+		}
+		this.threshold = unit.toNanos(threshold);
+	}
+
+	/**
+	 * Gets the run time after which the stack of a task is captured
+	 * 
+	 * @param unit to return the threshold in
+	 * @return the threshold
+	 */
+	public long getThreshold(TimeUnit unit) {
+		return unit.convert(threshold, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Marks a sync task as started on the current thread
+	 * 
+	 * @param task the task
+	 */
+	public void taskStarted(Task task) {
+		current = new Execution(task, Thread.currentThread(), clock.nanoTime());
+	}
+
+	/**
+	 * Marks the current sync task as finished
+	 */
+	public void taskFinished() {
+		Execution execution = current;
+		current = null;
+		if (execution != null) {
+			// Synchronized with check(), so a report is either attached before this or not at all
+			synchronized (execution) {
+				execution.finished = true;
+				if (execution.report != null) {
+					execution.report.setRunTime(clock.nanoTime() - execution.start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the running task has exceeded the threshold, and captures its stack if so.<br/>
+	 * <br/>
+	 * This is called periodically by the watchdog thread.
+	 * 
+	 * @return true if a report was captured
+	 */
+	public boolean check() {
+		Execution execution = current;
+		if (execution == null || execution.report != null) {
+			return false;
+		}
+		long stallTime = clock.nanoTime() - execution.start;
+		if (stallTime < threshold) {
+			return false;
+		}
+		StackTraceElement[] stackTrace = execution.thread.getStackTrace();
+		Task task = execution.task;
+		SlowTaskReport report = new SlowTaskReport(task.getTaskId(), task.getOwner(), stallTime, stackTrace);
+		synchronized (execution) {
+			if (execution.finished) {
+				// The task finished while the stack was captured
+				return false;
+			}
+			execution.report = report;
+		}
+		reports.add(report);
+		if (reportCount.incrementAndGet() > maxReports) {
+			if (reports.poll() != null) {
+				reportCount.decrementAndGet();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the reports captured since they were last polled, without removing them
+	 * 
+	 * @return the reports, oldest first
+	 */
+	public List<SlowTaskReport> getReports() {
+		return new ArrayList<SlowTaskReport>(reports);
+	}
+
+	/**
+	 * Gets and removes the reports captured since they were last polled
+	 * 
+	 * @return the reports, oldest first
+	 */
+	public List<SlowTaskReport> pollReports() {
+		List<SlowTaskReport> polled = new ArrayList<SlowTaskReport>();
+		SlowTaskReport report;
+		while ((report = reports.poll()) != null) {
+			reportCount.decrementAndGet();
+			polled.add(report);
+		}
+		return polled;
+	}
+
+	/**
+	 * Starts the watchdog thread
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread("Sync Task Watchdog") {
+			@Override
+			public void run() {
+				while (thread == this) {
+					check();
+					try {
+						long interval = Math.max(1, TimeUnit.NANOSECONDS.toMillis(threshold) / 4);
+						Thread.sleep(interval);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the watchdog thread
+	 */
+	public synchronized void stop() {
+		Thread t = thread;
+		thread = null;
+		if (t != null) {
+			t.interrupt();
+		}
+	}
+
+	private static class Execution {
+		private final Task task;
+		private final Thread thread;
+		private final long start;
+		private volatile SlowTaskReport report = null;
+		private boolean finished = false;
+
+		public Execution(Task task, Thread thread, long start) {
+			this.task = task;
+			this.thread = thread;
+			this.start = start;
+		}
+	}
+}
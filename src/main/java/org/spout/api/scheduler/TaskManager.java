@@ -186,6 +186,15 @@ public interface TaskManager {
 	 * @return Active workers
 	 */
 	public List<Task> getPendingTasks();
+
+	/**
+	 * Gets the rolling statistics of the run times and queue delays of the tasks executed by this task manager,
+	 * keyed by owner and priority.
+	 *
+	 * @return the task metrics
+	 */
+	@Threadsafe
+	public TaskMetrics getMetrics();
 	
 	/**
 	 * Gets the up time for the scheduler.  This is the time since server started for the main schedulers and the age of the world for the Region based schedulers.<br>
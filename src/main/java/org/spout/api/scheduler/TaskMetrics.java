@@ -0,0 +1,232 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects rolling histograms of task run times and queue delays, keyed by the owner of the task and its {@link TaskPriority}.<br/>
+ * <br/>
+ * The task manager records each execution with {@link #record(Object, TaskPriority, long, long)}, and admin commands or
+ * metrics exporters poll {@link #getStatistics()}.<br/>
+ * <br/>
+ * Owners are only weakly referenced, so the statistics of a disabled plugin are dropped once it is collected,
+ * even if {@link #remove(Object)} is not called.
+ */
+public class TaskMetrics {
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+	private final SchedulerClock clock;
+	private final long window;
+	private final int slots;
+
+	/**
+	 * Creates task metrics with a window of one minute, using the system clock
+	 */
+	public TaskMetrics() {
+		this(SchedulerClock.SYSTEM, 60, TimeUnit.SECONDS, 12);
+	}
+
+	/**
+	 * Creates task metrics
+	 * 
+	 * @param clock to read the time from
+	 * @param window the length of the window to keep statistics for
+	 * @param unit the unit of the window length
+	 * @param slots the number of slots to split the window into
+	 */
+	public TaskMetrics(SchedulerClock clock, long window, TimeUnit unit, int slots) {
+		this.clock = clock;
+		this.window = unit.toNanos(window);
+		this.slots = slots;
+	}
+
+	/**
+	 * Records an execution of a task
+	 * 
+	 * @param owner the owner of the task
+	 * @param priority the priority of the task
+	 * @param queueDelay the time the task waited past its scheduled time before starting, in ns
+	 * @param runTime the time the task ran for, in ns
+	 */
+	public void record(Object owner, TaskPriority priority, long queueDelay, long runTime) {
+		Entry entry = entries.get(new Key(owner, priority));
+		if (entry == null) {
+			removeCollected();
+			entry = new Entry();
+			Entry old = entries.putIfAbsent(new Key(owner, priority, collected), entry);
+			if (old != null) {
+				entry = old;
+			}
+		}
+		entry.record(queueDelay, runTime);
+	}
+
+	/**
+	 * Gets the statistics for all owners and priorities which have run tasks
+	 * 
+	 * @return the statistics
+	 */
+	public List<TaskStatistics> getStatistics() {
+		removeCollected();
+		List<TaskStatistics> statistics = new ArrayList<TaskStatistics>(entries.size());
+		for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+			if (!e.getKey().isCollected()) {
+				statistics.add(e.getValue().getStatistics(e.getKey()));
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Gets the statistics for all tasks with the given owner
+	 * 
+	 * @param owner of the tasks
+	 * @return the statistics, one for each priority used by the owner
+	 */
+	public List<TaskStatistics> getStatistics(Object owner) {
+		List<TaskStatistics> statistics = new ArrayList<TaskStatistics>();
+		for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+			if (e.getKey().getOwner() == owner && !e.getKey().isCollected()) {
+				statistics.add(e.getValue().getStatistics(e.getKey()));
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Removes the statistics for an owner, such as when a plugin is disabled
+	 * 
+	 * @param owner of the tasks
+	 */
+	public void remove(Object owner) {
+		for (Key key : entries.keySet()) {
+			if (key.getOwner() == owner) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Clears all statistics
+	 */
+	public void reset() {
+		entries.clear();
+	}
+
+	/**
+	 * Removes the statistics of owners which have been collected
+	 */
+	private void removeCollected() {
+		Reference<?> reference;
+		while ((reference = collected.poll()) != null) {
+			entries.remove(((OwnerReference) reference).key);
+		}
+	}
+
+	private class Entry {
+		private final RollingHistogram runTimes = new RollingHistogram(clock, window, TimeUnit.NANOSECONDS, slots);
+		private final RollingHistogram queueDelays = new RollingHistogram(clock, window, TimeUnit.NANOSECONDS, slots);
+
+		public void record(long queueDelay, long runTime) {
+			runTimes.record(runTime);
+			queueDelays.record(queueDelay);
+		}
+
+		public TaskStatistics getStatistics(Key key) {
+			return new TaskStatistics(key.getOwner(), key.priority, runTimes.getSnapshot(), queueDelays.getSnapshot());
+		}
+	}
+
+	/**
+	 * Identifies an owner and priority. Keys stored in the map reference the owner weakly, keys only used for lookups
+	 * reference it directly.
+	 */
+	private static class Key {
+		private final Object owner;
+		private final OwnerReference reference;
+		private final TaskPriority priority;
+		private final int hash;
+
+		public Key(Object owner, TaskPriority priority) {
+			this.owner = owner;
+			this.reference = null;
+			this.priority = priority;
+			this.hash = System.identityHashCode(owner) * 31 + System.identityHashCode(priority);
+		}
+
+		public Key(Object owner, TaskPriority priority, ReferenceQueue<Object> queue) {
+			// Tasks without an owner have nothing to release
+			this.owner = null;
+			this.reference = owner == null ? null : new OwnerReference(owner, queue, this);
+			this.priority = priority;
+			this.hash = System.identityHashCode(owner) * 31 + System.identityHashCode(priority);
+		}
+
+		public Object getOwner() {
+			return reference == null ? owner : reference.get();
+		}
+
+		public boolean isCollected() {
+			return reference != null && reference.get() == null;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			} else if (!(o instanceof Key)) {
+				return false;
+			} else {
+				Key other = (Key) o;
+				return !isCollected() && !other.isCollected() && other.getOwner() == getOwner() && other.priority == priority;
+			}
+		}
+	}
+
+	private static class OwnerReference extends WeakReference<Object> {
+		private final Key key;
+
+		public OwnerReference(Object owner, ReferenceQueue<Object> queue, Key key) {
+			super(owner, queue);
+			this.key = key;
+		}
+	}
+}
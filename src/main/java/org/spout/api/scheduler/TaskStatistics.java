@@ -0,0 +1,95 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+/**
+ * A snapshot of the statistics for the tasks of one owner and {@link TaskPriority}, over the window of a {@link TaskMetrics}.
+ */
+public class TaskStatistics {
+	private final Object owner;
+	private final TaskPriority priority;
+	private final Histogram runTimes;
+	private final Histogram queueDelays;
+
+	public TaskStatistics(Object owner, TaskPriority priority, Histogram runTimes, Histogram queueDelays) {
+		this.owner = owner;
+		this.priority = priority;
+		this.runTimes = runTimes;
+		this.queueDelays = queueDelays;
+	}
+
+	/**
+	 * Gets the owner of the tasks
+	 * 
+	 * @return the owner
+	 */
+	public Object getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets the priority of the tasks
+	 * 
+	 * @return the priority
+	 */
+	public TaskPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Gets the number of times the tasks ran
+	 * 
+	 * @return the run count
+	 */
+	public long getRunCount() {
+		return runTimes.getCount();
+	}
+
+	/**
+	 * Gets the histogram of task run times, in ns
+	 * 
+	 * @return the run times
+	 */
+	public Histogram getRunTimes() {
+		return runTimes;
+	}
+
+	/**
+	 * Gets the histogram of the time tasks waited past their scheduled time before starting, in ns
+	 * 
+	 * @return the queue delays
+	 */
+	public Histogram getQueueDelays() {
+		return queueDelays;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{owner=" + owner + ", maxDeferred=" + (priority == null ? "null" : priority.getMaxDeferred()) +
+				", runs=" + getRunCount() + ", run99=" + runTimes.getPercentile(99) + "ns, delay99=" + queueDelays.getPercentile(99) + "ns}";
+	}
+}
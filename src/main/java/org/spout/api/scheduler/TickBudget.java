@@ -0,0 +1,88 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+/**
+ * The time which sync tasks may use during a single tick.<br/>
+ * <br/>
+ * {@link TimeSlicedTask}s should check {@link #shouldYield()} regularly and return once it is true.
+ */
+public class TickBudget {
+	private final SchedulerClock clock;
+	private long start;
+	private long budget;
+
+	public TickBudget(SchedulerClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Starts a new budget period
+	 * 
+	 * @param budget the time available, in nanoseconds
+	 */
+	public void reset(long budget) {
+		this.start = clock.nanoTime();
+		this.budget = budget;
+	}
+
+	/**
+	 * Gets the time used since the budget period started
+	 * 
+	 * @return the used time in nanoseconds
+	 */
+	public long getUsed() {
+		return clock.nanoTime() - start;
+	}
+
+	/**
+	 * Gets the time remaining in the budget. A negative value indicates that the budget has been exceeded.
+	 * 
+	 * @return the remaining time in nanoseconds
+	 */
+	public long getRemaining() {
+		return budget - getUsed();
+	}
+
+	/**
+	 * Gets if the budget has been used up
+	 * 
+	 * @return true if no time remains
+	 */
+	public boolean isExhausted() {
+		return getRemaining() <= 0;
+	}
+
+	/**
+	 * Gets if a time sliced task should stop and continue in a later tick.
+	 * 
+	 * @return true if the task should yield
+	 */
+	public boolean shouldYield() {
+		return isExhausted();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+/**
+ * The time spent in each {@link TickStage} during a single tick, as recorded by a {@link TickStageProfiler}
+ */
+public class TickProfile {
+	private final long tick;
+	private final long totalTime;
+	private final long[] stageTimes;
+
+	public TickProfile(long tick, long totalTime, long[] stageTimes) {
+		this.tick = tick;
+		this.totalTime = totalTime;
+		this.stageTimes = stageTimes;
+	}
+
+	/**
+	 * Gets the number of the tick, counted from when the profiler was created or reset
+	 * 
+	 * @return the tick number
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Gets the wall time of the tick
+	 * 
+	 * @return the time in ns
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Gets the time spent in a stage during the tick
+	 * 
+	 * @param stage the stage, one of the {@link TickStage} constants
+	 * @return the time in ns
+	 */
+	public long getStageTime(int stage) {
+		return stageTimes[TickStageProfiler.getIndex(stage)];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Tick ").append(tick).append(": ").append(totalTime / 1000).append("us");
+		for (int i = 0; i < stageTimes.length; i++) {
+			if (stageTimes[i] > 0) {
+				sb.append(", ").append(TickStage.getStage(1 << i)).append('=').append(stageTimes[i] / 1000).append("us");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -168,6 +168,7 @@ public class TickStage {
 	}
 
 	private static int stage = TICKSTART;
+	private static volatile TickStageProfiler profiler = null;
 
 	/**
 	 * Sets the current stage. This is not synchronised, so should only be
@@ -176,9 +177,31 @@ public class TickStage {
 	 * @param stage the stage
 	 */
 	public static void setStage(int stage) {
+		TickStageProfiler profiler = TickStage.profiler;
+		if (profiler != null) {
+			profiler.stageChanged(TickStage.stage, stage);
+		}
 		TickStage.stage = stage;
 	}
 
+	/**
+	 * Sets the profiler which records the time spent in each stage.
+	 *
+	 * @param profiler the profiler, or null to disable profiling
+	 */
+	public static void setProfiler(TickStageProfiler profiler) {
+		TickStage.profiler = profiler;
+	}
+
+	/**
+	 * Gets the profiler which records the time spent in each stage.
+	 *
+	 * @return the profiler, or null if profiling is disabled
+	 */
+	public static TickStageProfiler getProfiler() {
+		return profiler;
+	}
+
 	/**
 	 * Checks if the current stages is one of the valid allowed stages.
 	 *
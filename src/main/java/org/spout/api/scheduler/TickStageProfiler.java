@@ -0,0 +1,172 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+/**
+ * Records the wall time spent in each {@link TickStage} per tick.<br/>
+ * <br/>
+ * Once installed with {@link TickStage#setProfiler(TickStageProfiler)}, each stage transition charges the time since the
+ * previous transition to the stage being left. A tick ends when the stage returns to {@link TickStage#TICKSTART}, at which
+ * point the per stage totals are recorded into a {@link Histogram} for each stage, and the tick is kept if it is the slowest so far.
+ */
+public class TickStageProfiler {
+	private static final int STAGES = 32;
+	private final SchedulerClock clock;
+	private final Histogram[] stageTimes = new Histogram[STAGES];
+	private final Histogram tickTimes = new Histogram();
+	private final long[] currentTick = new long[STAGES];
+	private long tickStart = -1;
+	private long lastTransition = -1;
+	private long tickCount = 0;
+	private TickProfile worstTick = null;
+
+	public TickStageProfiler() {
+		this(SchedulerClock.SYSTEM);
+	}
+
+	public TickStageProfiler(SchedulerClock clock) {
+		this.clock = clock;
+		for (int i = 0; i < STAGES; i++) {
+			stageTimes[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Records a stage transition. This is called by {@link TickStage#setStage(int)}.
+	 * 
+	 * @param from the stage being left
+	 * @param to the stage being entered
+	 */
+	public synchronized void stageChanged(int from, int to) {
+		long now = clock.nanoTime();
+		if (lastTransition >= 0 && tickStart >= 0) {
+			currentTick[getIndex(from)] += now - lastTransition;
+		}
+		lastTransition = now;
+		if (to == TickStage.TICKSTART && (from != TickStage.TICKSTART || tickStart < 0)) {
+			if (tickStart >= 0) {
+				endTick(now);
+			}
+			tickStart = now;
+		}
+	}
+
+	private void endTick(long now) {
+		long total = now - tickStart;
+		tickTimes.record(total);
+		for (int i = 0; i < STAGES; i++) {
+			if (currentTick[i] > 0) {
+				stageTimes[i].record(currentTick[i]);
+			}
+		}
+		if (worstTick == null || total > worstTick.getTotalTime()) {
+			worstTick = new TickProfile(tickCount, total, currentTick.clone());
+		}
+		tickCount++;
+		for (int i = 0; i < STAGES; i++) {
+			currentTick[i] = 0;
+		}
+	}
+
+	/**
+	 * Gets the histogram of time spent in a stage per tick, in ns. Ticks which did not enter the stage are not counted.
+	 * 
+	 * @param stage the stage, one of the {@link TickStage} constants
+	 * @return a copy of the stage times
+	 */
+	public synchronized Histogram getStageTimes(int stage) {
+		return new Histogram(stageTimes[getIndex(stage)]);
+	}
+
+	/**
+	 * Gets the histogram of the total time per tick, in ns
+	 * 
+	 * @return a copy of the tick times
+	 */
+	public synchronized Histogram getTickTimes() {
+		return new Histogram(tickTimes);
+	}
+
+	/**
+	 * Gets the slowest tick since the profiler was created or reset
+	 * 
+	 * @return the slowest tick, or null if no tick has completed
+	 */
+	public synchronized TickProfile getWorstTick() {
+		return worstTick;
+	}
+
+	/**
+	 * Gets the number of ticks which have completed
+	 * 
+	 * @return the tick count
+	 */
+	public synchronized long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * Clears all recorded times. The tick in progress is still recorded when it ends.
+	 */
+	public synchronized void reset() {
+		for (Histogram h : stageTimes) {
+			h.reset();
+		}
+		tickTimes.reset();
+		worstTick = null;
+		tickCount = 0;
+	}
+
+	/**
+	 * Gets a summary of the median, 99th percentile and maximum time of each stage
+	 * 
+	 * @return the summary
+	 */
+	public synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Ticks: ").append(tickCount);
+		appendPercentiles(sb, "TICK", tickTimes);
+		for (int i = 0; i < STAGES; i++) {
+			if (stageTimes[i].getCount() > 0) {
+				appendPercentiles(sb, TickStage.getStage(1 << i), stageTimes[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendPercentiles(StringBuilder sb, String name, Histogram h) {
+		sb.append('\n').append(name).append(": p50=").append(h.getPercentile(50) / 1000).append("us, p99=");
+		sb.append(h.getPercentile(99) / 1000).append("us, max=").append(h.getMax() / 1000).append("us");
+	}
+
+	static int getIndex(int stage) {
+		if (Integer.bitCount(stage) != 1) {
+			throw new IllegalArgumentException("A single stage must be given, got " + TickStage.getAllStages(stage));
+		}
+		return Integer.numberOfTrailingZeros(stage);
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A queue of sync tasks which are run against a per-tick time budget.<br/>
+ * <br/>
+ * Each task has a deadline of its submission time plus the maximum deferral of its {@link TaskPriority}. Every tick
+ * the tasks are run in deadline order until the budget is used up. The remaining tasks are deferred to later ticks,
+ * except for tasks which have reached their deadline, which are always run. {@link TaskPriority#CRITICAL} tasks are
+ * therefore never deferred, while {@link TaskPriority#LOWEST} tasks may wait up to 10 seconds under load.<br/>
+ * <br/>
+ * {@link TimeSlicedTask}s may yield part way through, and continue in the next tick.<br/>
+ * <br/>
+ * Tasks may be added from any thread, but {@link #runTick(long)} must only be called by the thread which owns the queue.
+ */
+public class TimeSlicedTaskQueue {
+	private static final Logger LOGGER = Logger.getLogger(TimeSlicedTaskQueue.class.getCanonicalName());
+	private final SchedulerClock clock;
+	private final TickBudget budget;
+	private final ConcurrentLinkedQueue<QueuedTask> incoming = new ConcurrentLinkedQueue<QueuedTask>();
+	private final PriorityQueue<QueuedTask> queue = new PriorityQueue<QueuedTask>();
+	private final Set<QueuedTask> live = Collections.newSetFromMap(new ConcurrentHashMap<QueuedTask, Boolean>());
+	private final AtomicLong sequence = new AtomicLong();
+	private int lastDeferred = 0;
+
+	public TimeSlicedTaskQueue() {
+		this(SchedulerClock.SYSTEM);
+	}
+
+	public TimeSlicedTaskQueue(SchedulerClock clock) {
+		this.clock = clock;
+		this.budget = new TickBudget(clock);
+	}
+
+	/**
+	 * Adds a task which runs to completion in a single tick
+	 * 
+	 * @param owner the owner of the task
+	 * @param task to run
+	 * @param priority the priority of the task
+	 * @return the queued task
+	 */
+	public QueuedTask add(Object owner, final Runnable task, TaskPriority priority) {
+		return add(owner, new TimeSlicedTask() {
+			@Override
+			public boolean runSlice(TickBudget budget) {
+				task.run();
+				return true;
+			}
+		}, priority);
+	}
+
+	/**
+	 * Adds a task which may yield and continue in later ticks
+	 * 
+	 * @param owner the owner of the task
+	 * @param task to run
+	 * @param priority the priority of the task
+	 * @return the queued task
+	 */
+	public QueuedTask add(Object owner, TimeSlicedTask task, TaskPriority priority) {
+		long deadline = clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(priority.getMaxDeferred());
+		QueuedTask queued = new QueuedTask(owner, task, priority, deadline, sequence.getAndIncrement());
+		live.add(queued);
+		incoming.add(queued);
+		return queued;
+	}
+
+	/**
+	 * Runs queued tasks until the budget is used up. Tasks which have reached their deadline are run even if there is no budget left.
+	 * 
+	 * @param budgetNanos the time available for tasks this tick, in nanoseconds
+	 * @return the number of tasks which completed
+	 */
+	public int runTick(long budgetNanos) {
+		budget.reset(budgetNanos);
+		QueuedTask task;
+		while ((task = incoming.poll()) != null) {
+			queue.add(task);
+		}
+
+		int completed = 0;
+		List<QueuedTask> continued = null;
+		while ((task = queue.peek()) != null) {
+			if (task.isCancelled()) {
+				queue.poll();
+				live.remove(task);
+				continue;
+			}
+			if (budget.isExhausted() && task.deadline > clock.nanoTime()) {
+				break;
+			}
+			queue.poll();
+			boolean done = true;
+			try {
+				done = task.task.runSlice(budget);
+			} catch (Throwable t) {
+				LOGGER.log(Level.SEVERE, "Exception while executing time sliced task for " + task.owner, t);
+			}
+			if (done) {
+				live.remove(task);
+				completed++;
+			} else {
+				// Continuations keep their deadline, but only get one slice per tick
+				if (continued == null) {
+					continued = new ArrayList<QueuedTask>();
+				}
+				continued.add(task);
+			}
+		}
+		if (continued != null) {
+			queue.addAll(continued);
+		}
+		lastDeferred = queue.size();
+		return completed;
+	}
+
+	/**
+	 * Cancels all tasks owned by the given owner
+	 * 
+	 * @param owner of the tasks
+	 */
+	public void cancelTasks(Object owner) {
+		for (QueuedTask task : live) {
+			if (task.owner == owner) {
+				task.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of tasks which were left in the queue at the end of the last tick
+	 * 
+	 * @return the number of deferred tasks
+	 */
+	public int getLastDeferredCount() {
+		return lastDeferred;
+	}
+
+	/**
+	 * Gets the number of tasks waiting to run, including tasks added since the last tick
+	 * 
+	 * @return the number of pending tasks
+	 */
+	public int size() {
+		return live.size();
+	}
+
+	/**
+	 * A task waiting in a {@link TimeSlicedTaskQueue}
+	 */
+	public static class QueuedTask implements Comparable<QueuedTask> {
+		private final Object owner;
+		private final TimeSlicedTask task;
+		private final TaskPriority priority;
+		private final long deadline;
+		private final long sequence;
+		private volatile boolean cancelled = false;
+
+		private QueuedTask(Object owner, TimeSlicedTask task, TaskPriority priority, long deadline, long sequence) {
+			this.owner = owner;
+			this.task = task;
+			this.priority = priority;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		public Object getOwner() {
+			return owner;
+		}
+
+		public TaskPriority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Stops the task from running, or continuing if it has yielded
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public int compareTo(QueuedTask o) {
+			if (deadline != o.deadline) {
+				return deadline < o.deadline ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+}
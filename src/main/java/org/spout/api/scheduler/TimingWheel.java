@@ -0,0 +1,296 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.spout.api.util.map.concurrent.TSyncIntObjectHashMap;
+
+/**
+ * A hashed hierarchical timing wheel for delayed and repeating tasks.<br/>
+ * <br/>
+ * Time is divided into ticks of a fixed length. The first level of the wheel has a slot for each of the next 256 ticks,
+ * and each further level has 64 slots covering 64 times the range of the level below. A timer is linked into the slot
+ * for its deadline, and timers in higher levels are cascaded down a level each time the level below wraps around.
+ * Scheduling, cancelling and rescheduling a repeating timer are all O(1), with no re-sorting of a priority queue.<br/>
+ * <br/>
+ * Timers may be scheduled and cancelled from any thread. {@link #advance(Collection)} must only be called by the thread which owns the wheel.
+ * 
+ * @param <T> the type of the timer tasks
+ */
+public class TimingWheel<T> {
+	private static final int ROOT_BITS = 8;
+	private static final int ROOT_SIZE = 1 << ROOT_BITS;
+	private static final int ROOT_MASK = ROOT_SIZE - 1;
+	private static final int LEVEL_BITS = 6;
+	private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+	private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+	private static final int LEVELS = 4;
+	private static final long MAX_TICKS = (1L << (ROOT_BITS + LEVELS * LEVEL_BITS)) - 1;
+	private final SchedulerClock clock;
+	private final long tickLength;
+	private final long startTime;
+	private final Timer<T>[] root;
+	private final Timer<T>[][] levels;
+	/**
+	 * Holds repeating timers which expired in the slot being processed, until they can be added back to the wheel
+	 */
+	private final Timer<T> repeating = new Timer<T>();
+	private final ConcurrentLinkedQueue<Timer<T>> incoming = new ConcurrentLinkedQueue<Timer<T>>();
+	private final TSyncIntObjectHashMap<Timer<T>> timers = new TSyncIntObjectHashMap<Timer<T>>();
+	/**
+	 * The next tick which has not been processed
+	 */
+	private long nextTick = 0;
+
+	/**
+	 * Creates a timing wheel using the system clock
+	 * 
+	 * @param tickLength the length of a tick, in ms
+	 */
+	public TimingWheel(long tickLength) {
+		this(SchedulerClock.SYSTEM, tickLength);
+	}
+
+	/**
+	 * Creates a timing wheel
+	 * 
+	 * @param clock to read the time from
+	 * @param tickLength the length of a tick, in ms
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimingWheel(SchedulerClock clock, long tickLength) {
+		if (tickLength <= 0) {
+			throw new IllegalArgumentException("Tick length must be positive");
+		}
+		this.clock = clock;
+		this.tickLength = TimeUnit.MILLISECONDS.toNanos(tickLength);
+		this.startTime = clock.nanoTime();
+		root = new Timer[ROOT_SIZE];
+		for (int i = 0; i < ROOT_SIZE; i++) {
+			root[i] = new Timer<T>();
+		}
+		levels = new Timer[LEVELS][LEVEL_SIZE];
+		for (int l = 0; l < LEVELS; l++) {
+			for (int i = 0; i < LEVEL_SIZE; i++) {
+				levels[l][i] = new Timer<T>();
+			}
+		}
+	}
+
+	/**
+	 * Schedules a timer. Any timer with the same id is cancelled.
+	 * 
+	 * @param id the id of the timer, used to cancel it
+	 * @param task the task to return when the timer expires
+	 * @param delay the delay before the first expiry, in ms
+	 * @param period the repeat period, in ms, or <= 0 for a single shot timer
+	 */
+	public void schedule(int id, T task, long delay, long period) {
+		if (task == null) {
+			throw new IllegalArgumentException("Task may not be null");
+		}
+		long periodTicks = period <= 0 ? 0 : Math.max(1, TimeUnit.MILLISECONDS.toNanos(period) / tickLength);
+		long deadline = getTick(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)) + tickLength - 1);
+		Timer<T> timer = new Timer<T>(id, task, deadline, periodTicks);
+		Timer<T> old = timers.put(id, timer);
+		if (old != null) {
+			old.cancelled = true;
+		}
+		incoming.add(timer);
+	}
+
+	/**
+	 * Cancels a timer
+	 * 
+	 * @param id of the timer
+	 * @return true if the timer was scheduled
+	 */
+	public boolean cancel(int id) {
+		Timer<T> timer = timers.remove(id);
+		if (timer == null) {
+			return false;
+		}
+		// Cancelled timers are unlinked when their slot is next processed
+		timer.cancelled = true;
+		return true;
+	}
+
+	/**
+	 * Checks if a timer is scheduled
+	 * 
+	 * @param id of the timer
+	 * @return true if scheduled
+	 */
+	public boolean isScheduled(int id) {
+		return timers.containsKey(id);
+	}
+
+	/**
+	 * Gets the number of scheduled timers
+	 * 
+	 * @return the number of timers
+	 */
+	public int size() {
+		return timers.size();
+	}
+
+	/**
+	 * Processes all ticks up to the current time, adding the tasks of expired timers to the collection.
+	 * Repeating timers are rescheduled for their next period.
+	 * 
+	 * @param expired the collection to add expired tasks to
+	 * @return the number of tasks added
+	 */
+	public int advance(Collection<? super T> expired) {
+		return advanceTo(getTick(clock.nanoTime()), expired);
+	}
+
+	private int advanceTo(long targetTick, Collection<? super T> expired) {
+		Timer<T> timer;
+		while ((timer = incoming.poll()) != null) {
+			if (!timer.cancelled) {
+				add(timer);
+			}
+		}
+
+		int count = 0;
+		while (nextTick <= targetTick) {
+			int index = (int) (nextTick & ROOT_MASK);
+			if (index == 0) {
+				// Cascade down each level which has wrapped around
+				for (int l = 0; l < LEVELS; l++) {
+					int levelIndex = (int) ((nextTick >> (ROOT_BITS + l * LEVEL_BITS)) & LEVEL_MASK);
+					cascade(levels[l][levelIndex]);
+					if (levelIndex != 0) {
+						break;
+					}
+				}
+			}
+			nextTick++;
+			Timer<T> head = root[index];
+			while ((timer = head.next) != head) {
+				timer.unlink();
+				if (timer.cancelled) {
+					continue;
+				}
+				expired.add(timer.task);
+				count++;
+				if (timer.period > 0) {
+					timer.deadline += timer.period;
+					timer.linkBefore(repeating);
+				} else {
+					timers.remove(timer.id, timer);
+				}
+			}
+			// Only re-add once the slot is empty, a full turn of the root wheel maps back to the same slot
+			while ((timer = repeating.next) != repeating) {
+				timer.unlink();
+				add(timer);
+			}
+		}
+		return count;
+	}
+
+	private void cascade(Timer<T> head) {
+		Timer<T> timer;
+		while ((timer = head.next) != head) {
+			timer.unlink();
+			if (!timer.cancelled) {
+				add(timer);
+			}
+		}
+	}
+
+	private void add(Timer<T> timer) {
+		long deadline = timer.deadline;
+		if (deadline < nextTick) {
+			deadline = nextTick;
+			timer.deadline = deadline;
+		}
+		long ticks = deadline - nextTick;
+		Timer<T> head;
+		if (ticks < ROOT_SIZE) {
+			head = root[(int) (deadline & ROOT_MASK)];
+		} else {
+			if (ticks > MAX_TICKS) {
+				// Past the range of the wheel, park in the last level until it cascades down
+				deadline = nextTick + MAX_TICKS;
+			}
+			int level = 0;
+			while (level < LEVELS - 1 && ticks >= 1L << (ROOT_BITS + (level + 1) * LEVEL_BITS)) {
+				level++;
+			}
+			head = levels[level][(int) ((deadline >> (ROOT_BITS + level * LEVEL_BITS)) & LEVEL_MASK)];
+		}
+		timer.linkBefore(head);
+	}
+
+	private long getTick(long time) {
+		return (time - startTime) / tickLength;
+	}
+
+	private static class Timer<T> {
+		private final int id;
+		private final T task;
+		private final long period;
+		private long deadline;
+		private volatile boolean cancelled = false;
+		private Timer<T> prev = this;
+		private Timer<T> next = this;
+
+		/**
+		 * Creates a list head
+		 */
+		public Timer() {
+			this(0, null, 0, 0);
+		}
+
+		public Timer(int id, T task, long deadline, long period) {
+			this.id = id;
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+		}
+
+		public void linkBefore(Timer<T> head) {
+			prev = head.prev;
+			next = head;
+			head.prev.next = this;
+			head.prev = this;
+		}
+
+		public void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = this;
+			next = this;
+		}
+	}
+}
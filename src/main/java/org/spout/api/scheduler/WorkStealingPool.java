@@ -0,0 +1,235 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A fixed size pool of threads which share work by stealing.<br/>
+ * <br/>
+ * Each worker has its own deque. Batches passed to {@link #invokeAll(Collection)} are dealt out across the deques,
+ * workers take tasks from the head of their own deque and steal from the tail of other deques once theirs is empty.
+ * The calling thread also helps to run the batch until it is complete, so one slow task only holds up a single thread
+ * while the remaining tasks are spread over the others.
+ */
+public class WorkStealingPool {
+	private static final Logger LOGGER = Logger.getLogger(WorkStealingPool.class.getCanonicalName());
+	private final Worker[] workers;
+	private final Object idleLock = new Object();
+	private final AtomicInteger queued = new AtomicInteger(0);
+	private final AtomicInteger nextWorker = new AtomicInteger(0);
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a pool with one thread per available processor
+	 * @param name prefix for the thread names
+	 */
+	public WorkStealingPool(String name) {
+		this(name, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a pool
+	 * @param name prefix for the thread names
+	 * @param threads the number of worker threads
+	 */
+	public WorkStealingPool(String name, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("A pool requires at least one thread");
+		}
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(this, name + "-" + i, i);
+		}
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Gets the number of worker threads
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return workers.length;
+	}
+
+	/**
+	 * Runs all the tasks across the pool and waits for them to complete.<br/>
+	 * <br/>
+	 * Exceptions thrown by tasks are logged and do not stop the rest of the batch.
+	 * @param tasks to run
+	 * @throws InterruptedException if interrupted while waiting for tasks run by other threads
+	 */
+	public void invokeAll(Collection<? extends Runnable> tasks) throws InterruptedException {
+		if (!running) {
+			throw new IllegalStateException("The pool has been shut down");
+		}
+		if (tasks.isEmpty()) {
+			return;
+		}
+		Batch batch = new Batch(tasks.size());
+		int index = nextWorker.getAndIncrement();
+		for (Runnable task : tasks) {
+			workers[(index++ & Integer.MAX_VALUE) % workers.length].deque.offerFirst(new BatchTask(batch, task));
+		}
+		queued.addAndGet(tasks.size());
+		synchronized (idleLock) {
+			idleLock.notifyAll();
+		}
+		// Help with the work until the batch is done
+		while (!batch.isDone()) {
+			BatchTask task = steal(-1);
+			if (task != null) {
+				task.run();
+			} else {
+				batch.await();
+			}
+		}
+		Throwable t = batch.failure.get();
+		if (t != null) {
+			LOGGER.log(Level.SEVERE, "Exception while executing task in work stealing pool", t);
+		}
+	}
+
+	/**
+	 * Stops the worker threads. Tasks which have not started are discarded.
+	 */
+	public void shutdown() {
+		running = false;
+		synchronized (idleLock) {
+			idleLock.notifyAll();
+		}
+	}
+
+	private BatchTask steal(int thief) {
+		int start = thief < 0 ? 0 : thief + 1;
+		for (int i = 0; i < workers.length; i++) {
+			int victim = (start + i) % workers.length;
+			if (victim == thief) {
+				continue;
+			}
+			BatchTask task = workers[victim].deque.pollLast();
+			if (task != null) {
+				queued.decrementAndGet();
+				return task;
+			}
+		}
+		return null;
+	}
+
+	private static class Worker extends Thread {
+		private final WorkStealingPool pool;
+		private final int index;
+		private final LinkedBlockingDeque<BatchTask> deque = new LinkedBlockingDeque<BatchTask>();
+
+		public Worker(WorkStealingPool pool, String name, int index) {
+			super(name);
+			this.pool = pool;
+			this.index = index;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (pool.running) {
+				BatchTask task = deque.pollFirst();
+				if (task != null) {
+					pool.queued.decrementAndGet();
+				} else {
+					task = pool.steal(index);
+				}
+				if (task != null) {
+					task.run();
+					continue;
+				}
+				synchronized (pool.idleLock) {
+					if (pool.running && pool.queued.get() <= 0) {
+						try {
+							pool.idleLock.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static class Batch {
+		private final AtomicInteger remaining;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		public Batch(int size) {
+			remaining = new AtomicInteger(size);
+		}
+
+		public boolean isDone() {
+			return remaining.get() == 0;
+		}
+
+		public void complete() {
+			if (remaining.decrementAndGet() == 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+
+		public synchronized void await() throws InterruptedException {
+			if (!isDone()) {
+				wait();
+			}
+		}
+	}
+
+	private static class BatchTask implements Runnable {
+		private final Batch batch;
+		private final Runnable task;
+
+		public BatchTask(Batch batch, Runnable task) {
+			this.batch = batch;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				batch.failure.compareAndSet(null, t);
+			} finally {
+				batch.complete();
+			}
+		}
+	}
+}
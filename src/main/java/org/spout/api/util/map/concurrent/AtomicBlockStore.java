@@ -243,6 +243,16 @@ public interface AtomicBlockStore {
 	 */
 	public void compress(TIntHashSet inUseSet);
 
+	/**
+	 * Gets the modification version of the store.<br>
+	 * <br>
+	 * The version is increased every time a block is changed or touched, and is not reset with the dirty arrays.
+	 * The version is increased after the block has been changed.
+	 *
+	 * @return the modification version
+	 */
+	public int getModificationVersion();
+
 	/**
 	 * Gets if the dirty array has overflowed since the last reset.<br>
 	 * <br>
@@ -57,6 +57,7 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 	private final AtomicInteger minZ = new AtomicInteger();
 	
 	private final AtomicInteger dirtyBlocks = new AtomicInteger(0);
+	private final AtomicInteger modificationVersion = new AtomicInteger(0);
 	
 	public AtomicPaletteBlockStore(int shift, boolean storeState, boolean compress) {
 		this(shift, storeState, compress, 10);
@@ -246,6 +247,11 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		return dirtyBlocks.getAndSet(0) > 0;
 	}
 	
+	@Override
+	public int getModificationVersion() {
+		return modificationVersion.get();
+	}
+
 	@Override
 	public int getDirtyBlocks() {
 		return dirtyBlocks.get();
@@ -289,6 +295,8 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 	}
 
 	public void markDirty(int x, int y, int z, int oldState, int newState) {
+		modificationVersion.incrementAndGet();
+
 		setAsMax(maxX, x);
 		setAsMin(minX, x);
 		
@@ -0,0 +1,225 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class EventExecutorGeneratorTest {
+	private static final int REPEATS = 5;
+	private static final int CALLS = 1000000;
+
+	@Test
+	public void testGeneratedExecutor() throws Exception {
+		PublicListener listener = new PublicListener();
+		EventExecutor executor = EventExecutorGenerator.create(listener, PublicListener.class.getMethod("onEvent", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		executor.execute(new PublicEvent());
+		executor.execute(new PublicEvent());
+		assertEquals(2, listener.getCallCount());
+	}
+
+	@Test
+	public void testReturnValueAndStatic() throws Exception {
+		PublicListener listener = new PublicListener();
+		EventExecutor returning = EventExecutorGenerator.create(listener, PublicListener.class.getMethod("onEventReturning", PublicEvent.class));
+		EventExecutor staticExecutor = EventExecutorGenerator.create(listener, PublicListener.class.getMethod("onEventStatic", PublicEvent.class));
+		assertTrue(returning instanceof GeneratedEventExecutor);
+		assertTrue(staticExecutor instanceof GeneratedEventExecutor);
+		int staticCalls = PublicListener.staticCallCount;
+		returning.execute(new PublicEvent());
+		staticExecutor.execute(new PublicEvent());
+		assertEquals(1, listener.getCallCount());
+		assertEquals(staticCalls + 1, PublicListener.staticCallCount);
+	}
+
+	@Test
+	public void testExceptionWrapping() throws Exception {
+		PublicListener listener = new PublicListener();
+		EventExecutor executor = EventExecutorGenerator.create(listener, PublicListener.class.getMethod("onEventThrowing", PublicEvent.class));
+		try {
+			executor.execute(new PublicEvent());
+			fail("Expected an EventException");
+		} catch (EventException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		try {
+			executor.execute(new PackagePrivateEvent());
+			fail("Expected an EventException for the wrong event type");
+		} catch (EventException e) {
+		}
+	}
+
+	@Test
+	public void testReflectionFallback() throws Exception {
+		PackagePrivateListener listener = new PackagePrivateListener();
+		Method method = PackagePrivateListener.class.getMethod("onEvent", PackagePrivateEvent.class);
+		assertFalse(EventExecutorGenerator.canGenerate(method));
+		EventExecutor executor = EventExecutorGenerator.create(listener, method);
+		assertTrue(executor instanceof ReflectedEventExecutor);
+		executor.execute(new PackagePrivateEvent());
+		assertTrue(listener.hasBeenCalled());
+	}
+
+	@Test
+	public void testOrderPreserved() {
+		EventManager eventManager = new SimpleEventManager();
+		PublicOrderedListener listener = new PublicOrderedListener();
+		eventManager.registerEvents(listener, this);
+		eventManager.callEvent(new PublicEvent());
+		assertEquals("EARLIEST,DEFAULT,MONITOR", listener.getOrder());
+		for (ListenerRegistration registration : PublicEvent.getHandlerList().getRegisteredListeners()) {
+			assertSame(GeneratedEventExecutor.class, registration.getExecutor().getClass());
+		}
+		HandlerList.unregisterAll();
+	}
+
+	@Test
+	public void testSpeed() throws Exception {
+		PublicListener listener = new PublicListener();
+		Method method = PublicListener.class.getMethod("onEvent", PublicEvent.class);
+		EventExecutor generated = EventExecutorGenerator.create(listener, method);
+		EventExecutor reflected = new ReflectedEventExecutor(listener, method);
+		PublicEvent event = new PublicEvent();
+
+		long generatedTime = 0;
+		long reflectedTime = 0;
+		for (int r = 0; r < REPEATS; r++) {
+			reflectedTime -= System.nanoTime();
+			for (int i = 0; i < CALLS; i++) {
+				reflected.execute(event);
+			}
+			reflectedTime += System.nanoTime();
+			generatedTime -= System.nanoTime();
+			for (int i = 0; i < CALLS; i++) {
+				generated.execute(event);
+			}
+			generatedTime += System.nanoTime();
+		}
+
+		assertEquals(2L * REPEATS * CALLS, listener.getCallCount());
+		System.out.println("Reflected executor time per call: " + ((double) reflectedTime / (REPEATS * CALLS)) + "ns");
+		System.out.println("Generated executor time per call: " + ((double) generatedTime / (REPEATS * CALLS)) + "ns");
+	}
+
+	public static class PublicEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class PublicListener implements Listener {
+		private static int staticCallCount = 0;
+		private long callCount = 0;
+
+		public void onEvent(PublicEvent event) {
+			callCount++;
+		}
+
+		public long onEventReturning(PublicEvent event) {
+			return ++callCount;
+		}
+
+		public static void onEventStatic(PublicEvent event) {
+			staticCallCount++;
+		}
+
+		public void onEventThrowing(PublicEvent event) throws IOException {
+			throw new IOException("Handler failure");
+		}
+
+		public long getCallCount() {
+			return callCount;
+		}
+	}
+
+	public static class PublicOrderedListener implements Listener {
+		private final StringBuilder order = new StringBuilder();
+
+		@EventHandler(order = Order.MONITOR)
+		public void onMonitor(PublicEvent event) {
+			order.append(",MONITOR");
+		}
+
+		@EventHandler(order = Order.EARLIEST)
+		public void onEarliest(PublicEvent event) {
+			order.append("EARLIEST");
+		}
+
+		@EventHandler(order = Order.DEFAULT)
+		public void onDefault(PublicEvent event) {
+			order.append(",DEFAULT");
+		}
+
+		public String getOrder() {
+			return order.toString();
+		}
+	}
+
+	static class PackagePrivateEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	static class PackagePrivateListener implements Listener {
+		private boolean called = false;
+
+		public void onEvent(PackagePrivateEvent event) {
+			called = true;
+		}
+
+		public boolean hasBeenCalled() {
+			return called;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class EventProfilerTest {
+	@Test
+	public void testTimings() {
+		final EventManager eventManager = new SimpleEventManager();
+		final EventProfiler profiler = new EventProfiler();
+		eventManager.setProfiler(profiler);
+		eventManager.registerEvent(TestProfiledEvent.class, Order.EARLY, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				throw new EventException("Listener failure");
+			}
+		}, this);
+		eventManager.registerEvent(TestProfiledEvent.class, Order.LATE, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+			}
+		}, this);
+
+		for (int i = 0; i < 10; i++) {
+			eventManager.callEvent(new TestProfiledEvent());
+		}
+
+		List<ListenerTimings> snapshot = profiler.getSnapshot();
+		assertEquals(2, snapshot.size());
+		for (ListenerTimings timings : snapshot) {
+			assertSame(this, timings.getOwner());
+			assertSame(TestProfiledEvent.class, timings.getEventClass());
+			assertEquals(10, timings.getInvocations());
+			assertEquals(10, timings.getEstimatedInvocations());
+			assertTrue(timings.getMaxNanos() <= timings.getTotalNanos());
+			assertEquals(timings.getOrder() == Order.EARLY ? 10 : 0, timings.getExceptions());
+		}
+
+		profiler.reset();
+		assertEquals(0, profiler.getSnapshot().size());
+		TestProfiledEvent.getHandlerList().unregister(this);
+	}
+
+	@Test
+	public void testSampling() {
+		final EventManager eventManager = new SimpleEventManager();
+		final EventProfiler profiler = new EventProfiler(4, false);
+		eventManager.setProfiler(profiler);
+		eventManager.registerEvent(TestProfiledEvent.class, Order.DEFAULT, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+			}
+		}, this);
+
+		for (int i = 0; i < 8; i++) {
+			eventManager.callEvent(new TestProfiledEvent());
+		}
+
+		List<ListenerTimings> snapshot = profiler.getSnapshot();
+		assertEquals(1, snapshot.size());
+		assertEquals(2, snapshot.get(0).getInvocations());
+		assertEquals(8, snapshot.get(0).getEstimatedInvocations());
+
+		eventManager.setProfiler(null);
+		assertNull(eventManager.getProfiler());
+		eventManager.callEvent(new TestProfiledEvent());
+		assertEquals(2, profiler.getSnapshot().get(0).getInvocations());
+		TestProfiledEvent.getHandlerList().unregister(this);
+	}
+
+	@Test
+	public void testUnregisteredListenerReleased() throws InterruptedException {
+		final EventManager eventManager = new SimpleEventManager();
+		final EventProfiler profiler = new EventProfiler();
+		eventManager.setProfiler(profiler);
+		Object owner = new Object();
+		eventManager.registerEvent(TestProfiledEvent.class, Order.DEFAULT, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+			}
+		}, owner);
+		eventManager.callEvent(new TestProfiledEvent());
+		assertEquals(1, profiler.getSnapshot().size());
+
+		TestProfiledEvent.getHandlerList().unregister(owner);
+		TestProfiledEvent.getHandlerList().bake();
+		WeakReference<Object> ownerReference = new WeakReference<Object>(owner);
+		owner = null;
+		for (int i = 0; i < 50 && ownerReference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(ownerReference.get());
+		assertEquals(0, profiler.getSnapshot().size());
+	}
+
+	@Test
+	public void testNullOwner() {
+		ListenerTimings timings = new ListenerTimings(null, TestProfiledEvent.class, Order.DEFAULT, 1, 1, 10, 10, 0, 0);
+		assertFalse(timings.toString().isEmpty());
+	}
+}
+
+class TestProfiledEvent extends Event {
+	private static final HandlerList HANDLERS = new HandlerList();
+
+	@Override
+	public HandlerList getHandlers() {
+		return HANDLERS;
+	}
+
+	public static HandlerList getHandlerList() {
+		return HANDLERS;
+	}
+}
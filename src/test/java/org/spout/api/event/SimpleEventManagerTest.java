@@ -33,8 +33,13 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 
 import org.spout.api.exception.EventException;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.scheduler.TaskManager;
+import org.spout.api.scheduler.TaskPriority;
 
 public class SimpleEventManagerTest {
 	protected EventManager eventManager;
@@ -86,6 +91,133 @@ public class SimpleEventManagerTest {
 			assertEquals(calledOrders.get(order.getIndex()), order);
 		}
 	}
+
+	@Test
+	public void testLazyEventCalling() {
+		final EventManager eventManager = new SimpleEventManager();
+		final int[] created = new int[1];
+		EventFactory<TestLazyEvent> factory = new EventFactory<TestLazyEvent>() {
+			@Override
+			public TestLazyEvent createEvent() {
+				created[0]++;
+				return new TestLazyEvent();
+			}
+		};
+
+		assertFalse(TestLazyEvent.getHandlerList().hasListeners());
+		assertNull(eventManager.callEvent(TestLazyEvent.getHandlerList(), factory));
+		assertEquals(0, created[0]);
+
+		final TestLazyListener testListener = new TestLazyListener();
+		eventManager.registerEvents(testListener, this);
+		assertTrue(TestLazyEvent.getHandlerList().hasListeners());
+		TestLazyEvent event = eventManager.callEvent(TestLazyEvent.getHandlerList(), factory);
+		assertNotNull(event);
+		assertTrue(event.hasBeenCalled());
+		assertEquals(1, created[0]);
+		assertEquals(1, testListener.getCallCount());
+
+		TestLazyEvent.getHandlerList().unregister(this);
+		assertFalse(TestLazyEvent.getHandlerList().hasListeners());
+	}
+
+	@Test
+	public void testRegionParallelCalling() {
+		final EventManager eventManager = new SimpleEventManager();
+		final TestRegionListener testListener = new TestRegionListener();
+		Region region = Mockito.mock(Region.class);
+		TaskManager taskManager = Mockito.mock(TaskManager.class);
+		Mockito.when(region.getTaskManager()).thenReturn(taskManager);
+		eventManager.registerEvents(testListener, this);
+
+		eventManager.callEvent(new TestRegionEvent(region));
+		eventManager.callEvent(new TestRegionEvent(region));
+		assertEquals(2, testListener.getSyncCallCount());
+		assertEquals(0, testListener.getParallelCallCount());
+
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		Mockito.verify(taskManager, Mockito.times(1)).scheduleSyncDelayedTask(Mockito.isNull(), task.capture(), Mockito.eq(TaskPriority.CRITICAL));
+		task.getValue().run();
+		assertEquals(2, testListener.getParallelCallCount());
+
+		eventManager.callEvent(new TestRegionEvent(null));
+		assertEquals(3, testListener.getSyncCallCount());
+		assertEquals(3, testListener.getParallelCallCount());
+
+		TestRegionEvent.getHandlerList().unregister(this);
+	}
+}
+
+class TestRegionEvent extends Event implements RegionBoundEvent {
+	private static final HandlerList HANDLERS = new HandlerList();
+	private final Region region;
+
+	public TestRegionEvent(Region region) {
+		this.region = region;
+	}
+
+	@Override
+	public Region getRegion() {
+		return region;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return HANDLERS;
+	}
+
+	public static HandlerList getHandlerList() {
+		return HANDLERS;
+	}
+}
+
+class TestRegionListener implements Listener {
+	private int syncCallCount = 0;
+	private int parallelCallCount = 0;
+
+	@EventHandler
+	public void onTestRegionEvent(TestRegionEvent event) {
+		syncCallCount++;
+	}
+
+	@EventHandler(regionParallel = true)
+	public void onTestRegionEventParallel(TestRegionEvent event) {
+		parallelCallCount++;
+	}
+
+	public int getSyncCallCount() {
+		return syncCallCount;
+	}
+
+	public int getParallelCallCount() {
+		return parallelCallCount;
+	}
+}
+
+class TestLazyEvent extends Event {
+	private static final HandlerList HANDLERS = new HandlerList();
+
+	@Override
+	public HandlerList getHandlers() {
+		return HANDLERS;
+	}
+
+	public static HandlerList getHandlerList() {
+		return HANDLERS;
+	}
+}
+
+class TestLazyListener implements Listener {
+	private int callCount = 0;
+
+	@EventHandler
+	public void onTestLazyEvent(TestLazyEvent event) {
+		callCount++;
+	}
+
+	public int getCallCount() {
+		return callCount;
+	}
 }
 
 class TestEvent extends Event {
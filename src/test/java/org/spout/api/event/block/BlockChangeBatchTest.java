@@ -0,0 +1,127 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event.block;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.spout.api.EngineFaker;
+import org.spout.api.event.Event;
+import org.spout.api.event.EventExecutor;
+import org.spout.api.event.Order;
+import org.spout.api.event.SimpleEventManager;
+import org.spout.api.exception.EventException;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.block.BlockFullState;
+
+public class BlockChangeBatchTest extends EngineFaker {
+	@Test
+	public void testCoordinatePacking() {
+		for (int x = -16; x < 32; x += 3) {
+			for (int y = 0; y < 16; y++) {
+				for (int z = 0; z < 16; z += 5) {
+					short packed = BlockChangeBatch.getPackedCoordinates(x, y, z);
+					assertEquals(x & 15, BlockChangeBatch.getLocalX(packed));
+					assertEquals(y, BlockChangeBatch.getLocalY(packed));
+					assertEquals(z, BlockChangeBatch.getLocalZ(packed));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCollecting() {
+		BlockChangeBatch batch = new BlockChangeBatch(null);
+		assertTrue(batch.isEmpty());
+		for (int i = 0; i < 100; i++) {
+			batch.add(i, i >> 4, 15 - (i & 15), (short) i, (short) 0, (short) (i + 1), (short) 2);
+		}
+		assertEquals(100, batch.size());
+
+		// No listeners are registered for the batch event, so flushing only clears the batch
+		assertNull(batch.flush(new SimpleEventManager(), 0));
+		assertTrue(batch.isEmpty());
+	}
+
+	@Test
+	public void testListener() {
+		Chunk chunk = mock(Chunk.class);
+		when(chunk.getBlockX()).thenReturn(32);
+		when(chunk.getBlockY()).thenReturn(0);
+		when(chunk.getBlockZ()).thenReturn(-16);
+
+		final List<BlockChangeBatchEvent> events = new ArrayList<BlockChangeBatchEvent>();
+		SimpleEventManager manager = new SimpleEventManager();
+		manager.registerEvent(BlockChangeBatchEvent.class, Order.DEFAULT, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				events.add((BlockChangeBatchEvent) event);
+			}
+		}, this);
+		try {
+			assertTrue(BlockChangeBatch.isEnabled());
+			BlockChangeBatch batch = new BlockChangeBatch(chunk);
+			batch.add(33, 5, -14, BlockMaterial.AIR.getId(), (short) 0, BlockMaterial.SOLID.getId(), (short) 3);
+			batch.add(47, 15, -1, BlockMaterial.SOLID.getId(), (short) 3, BlockMaterial.AIR.getId(), (short) 0);
+
+			BlockChangeBatchEvent event = batch.flush(manager, 4);
+			assertNotNull(event);
+			assertEquals(1, events.size());
+			assertSame(event, events.get(0));
+			assertSame(chunk, event.getChunk());
+			assertEquals(4, event.getStage());
+			assertEquals(2, event.getChangeCount());
+
+			assertEquals(33, event.getBlockX(0));
+			assertEquals(5, event.getBlockY(0));
+			assertEquals(-14, event.getBlockZ(0));
+			assertEquals(BlockFullState.getPacked(BlockMaterial.AIR.getId(), (short) 0), event.getOldStates()[0]);
+			assertEquals(BlockFullState.getPacked(BlockMaterial.SOLID.getId(), (short) 3), event.getNewStates()[0]);
+			assertSame(BlockMaterial.AIR, event.getOldMaterial(0));
+
+			assertEquals(47, event.getBlockX(1));
+			assertEquals(15, event.getBlockY(1));
+			assertEquals(-1, event.getBlockZ(1));
+			assertEquals(BlockFullState.getPacked(BlockMaterial.SOLID.getId(), (short) 3), event.getOldStates()[1]);
+			assertSame(BlockMaterial.AIR, event.getNewMaterial(1));
+			assertTrue(batch.isEmpty());
+		} finally {
+			BlockChangeBatchEvent.getHandlerList().unregister(this);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Chunk;
+
+public class BlockUpdateAccumulatorTest {
+	private static final int THRESHOLD = 16;
+
+	@Test
+	public void testCoalesce() {
+		BlockUpdateAccumulator accumulator = new BlockUpdateAccumulator(THRESHOLD);
+		Chunk first = mock(Chunk.class);
+		Chunk second = mock(Chunk.class);
+
+		accumulator.add(first, 1, 2, 3, (short) 4, (short) 5);
+		accumulator.add(second, 15, 15, 15, (short) 1, (short) 0);
+		accumulator.add(first, 0, 0, 0, (short) 6, (short) 7);
+		// A second change to the same block replaces the first
+		accumulator.add(first, 1, 2, 3, (short) 8, (short) -1);
+		assertEquals(2, accumulator.size());
+
+		List<ChunkBlockUpdates> updates = accumulator.drain();
+		assertEquals(0, accumulator.size());
+		assertEquals(2, updates.size());
+
+		ChunkBlockUpdates firstUpdates = updates.get(0);
+		assertSame(first, firstUpdates.getChunk());
+		assertFalse(firstUpdates.isOverflowed());
+		assertEquals(2, firstUpdates.size());
+		assertEquals(1, firstUpdates.getX(0));
+		assertEquals(2, firstUpdates.getY(0));
+		assertEquals(3, firstUpdates.getZ(0));
+		assertEquals(8, firstUpdates.getId(0));
+		assertEquals(-1, firstUpdates.getData(0));
+		assertEquals(6, firstUpdates.getId(1));
+		assertEquals(7, firstUpdates.getData(1));
+
+		ChunkBlockUpdates secondUpdates = updates.get(1);
+		assertSame(second, secondUpdates.getChunk());
+		assertEquals(1, secondUpdates.size());
+		assertEquals(15, secondUpdates.getX(0));
+		assertEquals(15, secondUpdates.getY(0));
+		assertEquals(15, secondUpdates.getZ(0));
+	}
+
+	@Test
+	public void testOverflow() {
+		BlockUpdateAccumulator accumulator = new BlockUpdateAccumulator(THRESHOLD);
+		Chunk chunk = mock(Chunk.class);
+		for (int i = 0; i < THRESHOLD; i++) {
+			accumulator.add(chunk, i, 0, 0, (short) 1, (short) 0);
+		}
+		// Changing a block which already changed doesn't count towards the threshold
+		accumulator.add(chunk, 0, 0, 0, (short) 2, (short) 0);
+		ChunkBlockUpdates updates = accumulator.drain().get(0);
+		assertFalse(updates.isOverflowed());
+		assertEquals(THRESHOLD, updates.size());
+
+		for (int i = 0; i <= THRESHOLD; i++) {
+			accumulator.add(chunk, i & 15, i >> 4, 0, (short) 1, (short) 0);
+		}
+		updates = accumulator.drain().get(0);
+		assertTrue(updates.isOverflowed());
+		assertEquals(0, updates.size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testIndex() {
+		ChunkBlockUpdates updates = new ChunkBlockUpdates(mock(Chunk.class), THRESHOLD);
+		updates.add(0, 0, 0, (short) 1, (short) 0);
+		updates.getX(1);
+	}
+}
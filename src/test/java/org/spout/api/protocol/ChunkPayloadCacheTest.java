@@ -0,0 +1,193 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Chunk;
+
+public class ChunkPayloadCacheTest {
+	private static final int PAYLOAD = 100;
+
+	@Test
+	public void testHitAndModification() {
+		ChunkPayloadCache cache = new ChunkPayloadCache(PAYLOAD * 10);
+		CountingEncoder encoder = new CountingEncoder(PAYLOAD);
+		Chunk chunk = mock(Chunk.class);
+
+		byte[] payload = cache.get(chunk, encoder);
+		assertSame(payload, cache.get(chunk, encoder));
+		assertEquals(1, encoder.count.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(PAYLOAD, cache.getMemoryUsage());
+
+		when(chunk.getModificationVersion()).thenReturn(1);
+		cache.get(chunk, encoder);
+		assertEquals(2, encoder.count.get());
+		assertEquals(1, cache.size());
+		assertEquals(PAYLOAD, cache.getMemoryUsage());
+
+		cache.invalidate(chunk);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getMemoryUsage());
+	}
+
+	@Test
+	public void testEviction() {
+		ChunkPayloadCache cache = new ChunkPayloadCache(PAYLOAD * 3);
+		CountingEncoder encoder = new CountingEncoder(PAYLOAD);
+		Chunk[] chunks = new Chunk[4];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = mock(Chunk.class);
+		}
+
+		cache.get(chunks[0], encoder);
+		cache.get(chunks[1], encoder);
+		cache.get(chunks[2], encoder);
+		// chunks[1] becomes the least recently used
+		cache.get(chunks[0], encoder);
+		cache.get(chunks[3], encoder);
+
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertEquals(PAYLOAD * 3, cache.getMemoryUsage());
+
+		int count = encoder.count.get();
+		cache.get(chunks[0], encoder);
+		cache.get(chunks[2], encoder);
+		cache.get(chunks[3], encoder);
+		assertEquals(count, encoder.count.get());
+		cache.get(chunks[1], encoder);
+		assertEquals(count + 1, encoder.count.get());
+	}
+
+	@Test
+	public void testDroppedChunk() throws InterruptedException {
+		ChunkPayloadCache cache = new ChunkPayloadCache(PAYLOAD * 10);
+		Chunk chunk = mock(Chunk.class);
+		cache.get(chunk, new CountingEncoder(PAYLOAD));
+		assertEquals(1, cache.size());
+
+		// The chunk is unloaded without invalidating its payload
+		WeakReference<Chunk> reference = new WeakReference<Chunk>(chunk);
+		chunk = null;
+		// Mockito keeps the last invocation of each thread, which would otherwise keep the mock reachable
+		mock(Chunk.class).getModificationVersion();
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getMemoryUsage());
+	}
+
+	@Test
+	public void testFailedEncode() {
+		ChunkPayloadCache cache = new ChunkPayloadCache(PAYLOAD);
+		Chunk chunk = mock(Chunk.class);
+		try {
+			cache.get(chunk, new ChunkPayloadCache.PayloadEncoder() {
+				@Override
+				public byte[] encode(Chunk chunk) {
+					throw new IllegalArgumentException();
+				}
+			});
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, cache.size());
+			return;
+		}
+		throw new AssertionError("Encoder exception was not thrown");
+	}
+
+	@Test
+	public void testConcurrentRequests() throws InterruptedException {
+		final int threadCount = 8;
+		final ChunkPayloadCache cache = new ChunkPayloadCache(PAYLOAD * 10);
+		final Chunk chunk = mock(Chunk.class);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountingEncoder encoder = new CountingEncoder(PAYLOAD) {
+			@Override
+			public byte[] encode(Chunk chunk) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.encode(chunk);
+			}
+		};
+
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					cache.get(chunk, encoder);
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(1, encoder.count.get());
+		assertEquals(threadCount - 1, cache.getHits());
+	}
+
+	private static class CountingEncoder implements ChunkPayloadCache.PayloadEncoder {
+		private final AtomicInteger count = new AtomicInteger();
+		private final int length;
+
+		public CountingEncoder(int length) {
+			this.length = length;
+		}
+
+		@Override
+		public byte[] encode(Chunk chunk) {
+			count.incrementAndGet();
+			return new byte[length];
+		}
+	}
+}
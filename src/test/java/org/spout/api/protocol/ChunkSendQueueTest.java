@@ -0,0 +1,155 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.math.Vector3;
+
+public class ChunkSendQueueTest {
+	private static final int MAX_CHUNKS = 4;
+	private static final int MAX_BYTES = 1000;
+	private static final long BACKLOG_LIMIT = 10000;
+
+	@Test
+	public void testDistanceOrder() {
+		ChunkSendQueue queue = new ChunkSendQueue(10, MAX_BYTES, BACKLOG_LIMIT);
+		Chunk[] chunks = new Chunk[5];
+		int[] distances = {3, 0, 4, 1, 2};
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = createChunk(distances[i], 0, 0);
+			queue.add(chunks[i]);
+		}
+		assertFalse(queue.add(chunks[0]));
+
+		queue.startTick(Vector3.ZERO, null, 0);
+		assertSame(chunks[1], queue.poll());
+		assertSame(chunks[3], queue.poll());
+		assertSame(chunks[4], queue.poll());
+		assertSame(chunks[0], queue.poll());
+		assertSame(chunks[2], queue.poll());
+		assertNull(queue.poll());
+		assertEquals(0, queue.getSize());
+		assertEquals(5, queue.getPeakSize());
+	}
+
+	@Test
+	public void testDirectionWeight() {
+		ChunkSendQueue queue = new ChunkSendQueue(MAX_CHUNKS, MAX_BYTES, BACKLOG_LIMIT);
+		Chunk behind = createChunk(-3, 0, 0);
+		Chunk side = createChunk(0, 0, 3);
+		Chunk ahead = createChunk(4, 0, 0);
+		queue.add(behind);
+		queue.add(side);
+		queue.add(ahead);
+
+		// The chunk ahead is further away, but is still sent first
+		queue.startTick(new Vector3(8, 8, 8), new Vector3(1, 0, 0), 0);
+		assertSame(ahead, queue.poll());
+		assertSame(side, queue.poll());
+		assertSame(behind, queue.poll());
+	}
+
+	@Test
+	public void testRemove() {
+		ChunkSendQueue queue = new ChunkSendQueue(MAX_CHUNKS, MAX_BYTES, BACKLOG_LIMIT);
+		Chunk near = createChunk(0, 0, 0);
+		Chunk far = createChunk(5, 0, 0);
+		queue.add(near);
+		queue.add(far);
+		queue.startTick(Vector3.ZERO, null, 0);
+		assertTrue(queue.remove(near));
+		assertSame(far, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testBudgets() {
+		ChunkSendQueue queue = new ChunkSendQueue(MAX_CHUNKS, MAX_BYTES, BACKLOG_LIMIT);
+		for (int i = 0; i < 10; i++) {
+			queue.add(createChunk(i, 0, 0));
+		}
+
+		queue.startTick(Vector3.ZERO, null, 0);
+		assertEquals(MAX_CHUNKS, sendAll(queue, 1));
+		assertEquals(6, queue.getSize());
+
+		queue.startTick(Vector3.ZERO, null, 0);
+		assertEquals(2, sendAll(queue, MAX_BYTES / 2));
+		assertEquals(4, queue.getSize());
+		assertEquals(6, queue.getTotalChunksSent());
+		assertEquals(MAX_CHUNKS + MAX_BYTES, queue.getTotalBytesSent());
+	}
+
+	@Test
+	public void testBacklog() {
+		ChunkSendQueue queue = new ChunkSendQueue(MAX_CHUNKS, MAX_BYTES, BACKLOG_LIMIT);
+		queue.startTick(Vector3.ZERO, null, BACKLOG_LIMIT + 1);
+		assertEquals(MAX_CHUNKS / 2, queue.getChunkBudget());
+		assertEquals(MAX_BYTES / 2, queue.getByteBudget());
+
+		queue.startTick(Vector3.ZERO, null, BACKLOG_LIMIT + 1);
+		queue.startTick(Vector3.ZERO, null, BACKLOG_LIMIT + 1);
+		assertEquals(1, queue.getChunkBudget());
+
+		// A backlog between half the limit and the limit keeps the budget
+		queue.startTick(Vector3.ZERO, null, BACKLOG_LIMIT - 1);
+		assertEquals(1, queue.getChunkBudget());
+
+		for (int i = 0; i < 100; i++) {
+			queue.startTick(Vector3.ZERO, null, 0);
+		}
+		assertEquals(MAX_CHUNKS, queue.getChunkBudget());
+		assertEquals(MAX_BYTES, queue.getByteBudget());
+	}
+
+	private static int sendAll(ChunkSendQueue queue, int bytes) {
+		int sent = 0;
+		while (queue.poll() != null) {
+			queue.chunkSent();
+			queue.bytesSent(bytes);
+			sent++;
+		}
+		return sent;
+	}
+
+	private static Chunk createChunk(int x, int y, int z) {
+		Chunk c = mock(Chunk.class);
+		when(c.getBlockX()).thenReturn(x << Chunk.BLOCKS.BITS);
+		when(c.getBlockY()).thenReturn(y << Chunk.BLOCKS.BITS);
+		when(c.getBlockZ()).thenReturn(z << Chunk.BLOCKS.BITS);
+		return c;
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.junit.Test;
+import org.spout.api.command.Command;
+import org.spout.api.command.CommandArguments;
+import org.spout.api.exception.UnknownPacketException;
+
+public class CommonEncoderTest {
+	private static final int BYTES = 1000;
+	private static final int MESSAGES = 20000;
+	private static final int SESSIONS = 100;
+
+	@Test
+	public void testContiguous() throws Exception {
+		Channel channel = createChannel();
+
+		CommonEncoder legacy = new CommonEncoder(false);
+		legacy.setProtocol(new TestProtocol(-1));
+		CommonEncoder contiguous = new CommonEncoder(false);
+		contiguous.setProtocol(new TestProtocol(3));
+
+		for (Message message : new Message[] {new DirectMessage(BYTES), new CopiedMessage(BYTES), new DirectMessage(0)}) {
+			ChannelBuffer expected = (ChannelBuffer) legacy.encode(null, channel, message);
+			ChannelBuffer actual = (ChannelBuffer) contiguous.encode(null, channel, message);
+			assertTrue("Reserved header path should return a single buffer", actual.hasArray());
+			assertArrayEquals(toArray(expected), toArray(actual));
+		}
+	}
+
+	@Test
+	public void testBroadcast() throws Exception {
+		Channel channel = createChannel();
+		Protocol protocol = new TestProtocol(3);
+		Protocol otherProtocol = new TestProtocol(-1);
+
+		Message message = new DirectMessage(BYTES);
+		ChannelBuffer expected = (ChannelBuffer) createEncoder(protocol).encode(null, channel, message);
+		BroadcastMessage broadcast = new BroadcastMessage(message);
+
+		ChannelBuffer[] views = new ChannelBuffer[SESSIONS];
+		for (int i = 0; i < SESSIONS; i++) {
+			views[i] = (ChannelBuffer) createEncoder(protocol).encode(null, channel, broadcast);
+		}
+		assertEquals(1, broadcast.getEncodeCount());
+
+		views[0].skipBytes(views[0].readableBytes());
+		for (int i = 1; i < SESSIONS; i++) {
+			assertArrayEquals(toArray(expected), toArray(views[i]));
+		}
+
+		ChannelBuffer other = (ChannelBuffer) createEncoder(otherProtocol).encode(null, channel, broadcast);
+		assertEquals(2, broadcast.getEncodeCount());
+		assertArrayEquals(toArray(expected), toArray(other));
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		Channel channel = createChannel();
+		CommonEncoder encoder = createEncoder(new TestProtocol(3));
+		Message[] messages = {new DirectMessage(BYTES), new CopiedMessage(10), new BroadcastMessage(new DirectMessage(5))};
+
+		ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+		for (Message message : messages) {
+			expected.writeBytes((ChannelBuffer) encoder.encode(null, channel, message));
+		}
+		ChannelBuffer batch = (ChannelBuffer) encoder.encode(null, channel, new MessageBatch(Arrays.asList(messages)));
+		assertArrayEquals(toArray(expected), toArray(batch));
+	}
+
+	@Test
+	public void testSidedCodec() throws Exception {
+		Channel channel = createChannel();
+		CommonEncoder legacy = createEncoder(new TestProtocol(-1));
+		CommonEncoder contiguous = createEncoder(new TestProtocol(3));
+
+		// The codec only writes messages sent to clients to a supplied buffer
+		Message message = new SidedMessage(BYTES);
+		ChannelBuffer expected = (ChannelBuffer) contiguous.encode(null, channel, message);
+		assertEquals(BYTES + 3, expected.readableBytes());
+		assertArrayEquals(toArray(expected), toArray((ChannelBuffer) legacy.encode(null, channel, message)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnencodedMessage() throws Exception {
+		createEncoder(new TestProtocol(-1)).encode(null, createChannel(), new UnencodedMessage(BYTES));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnencodedMessageContiguous() throws Exception {
+		createEncoder(new TestProtocol(3)).encode(null, createChannel(), new UnencodedMessage(BYTES));
+	}
+
+	@Test(expected = ReadOnlyBufferException.class)
+	public void testBroadcastReadOnly() throws Exception {
+		BroadcastMessage broadcast = new BroadcastMessage(new DirectMessage(BYTES));
+		ChannelBuffer view = (ChannelBuffer) createEncoder(new TestProtocol(3)).encode(null, createChannel(), broadcast);
+		view.setByte(0, 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testHeaderTooLong() throws Exception {
+		CommonEncoder encoder = new CommonEncoder(false);
+		encoder.setProtocol(new TestProtocol(2));
+		encoder.encode(null, createChannel(), new DirectMessage(BYTES));
+	}
+
+	@Test
+	public void testSpeed() throws Exception {
+		Channel channel = createChannel();
+		CommonEncoder legacy = new CommonEncoder(false);
+		legacy.setProtocol(new TestProtocol(-1));
+		CommonEncoder contiguous = new CommonEncoder(false);
+		contiguous.setProtocol(new TestProtocol(3));
+
+		byte[] out = new byte[BYTES + 3];
+		Message message = new DirectMessage(BYTES);
+
+		long legacyTime = 0;
+		long contiguousTime = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < MESSAGES; i++) {
+				((ChannelBuffer) legacy.encode(null, channel, message)).readBytes(out);
+			}
+			legacyTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < MESSAGES; i++) {
+				((ChannelBuffer) contiguous.encode(null, channel, message)).readBytes(out);
+			}
+			contiguousTime = System.nanoTime() - start;
+		}
+		System.out.println("Encoding " + MESSAGES + " messages with a separate header took " + (legacyTime / 1000000) + "ms, with a reserved header took " + (contiguousTime / 1000000) + "ms");
+	}
+
+	@Test
+	public void testBroadcastSpeed() throws Exception {
+		Channel channel = createChannel();
+		Protocol protocol = new TestProtocol(3);
+		CommonEncoder[] encoders = new CommonEncoder[SESSIONS];
+		for (int i = 0; i < SESSIONS; i++) {
+			encoders[i] = createEncoder(protocol);
+		}
+
+		byte[] out = new byte[BYTES + 3];
+		Message message = new DirectMessage(BYTES);
+		int rounds = MESSAGES / SESSIONS;
+
+		long separateTime = 0;
+		long broadcastTime = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				for (CommonEncoder encoder : encoders) {
+					((ChannelBuffer) encoder.encode(null, channel, message)).readBytes(out);
+				}
+			}
+			separateTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				BroadcastMessage broadcast = new BroadcastMessage(message);
+				for (CommonEncoder encoder : encoders) {
+					((ChannelBuffer) encoder.encode(null, channel, broadcast)).readBytes(out);
+				}
+			}
+			broadcastTime = System.nanoTime() - start;
+		}
+		System.out.println("Sending " + rounds + " messages to " + SESSIONS + " sessions took " + (separateTime / 1000000) + "ms encoding for each session, " + (broadcastTime / 1000000) + "ms encoding once");
+	}
+
+	private static CommonEncoder createEncoder(Protocol protocol) {
+		CommonEncoder encoder = new CommonEncoder(false);
+		encoder.setProtocol(protocol);
+		return encoder;
+	}
+
+	private static Channel createChannel() {
+		return new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline());
+	}
+
+	private static byte[] toArray(ChannelBuffer buffer) {
+		byte[] array = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), array);
+		return array;
+	}
+
+	private static abstract class TestMessage implements Message {
+		private final int length;
+
+		public TestMessage(int length) {
+			this.length = length;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public boolean isAsync() {
+			return false;
+		}
+
+		@Override
+		public int getChannelId() {
+			return DEFAULT_CHANNEL;
+		}
+	}
+
+	private static class DirectMessage extends TestMessage {
+		public DirectMessage(int length) {
+			super(length);
+		}
+	}
+
+	private static class CopiedMessage extends TestMessage {
+		public CopiedMessage(int length) {
+			super(length);
+		}
+	}
+
+	private static class SidedMessage extends TestMessage {
+		public SidedMessage(int length) {
+			super(length);
+		}
+	}
+
+	private static class UnencodedMessage extends TestMessage {
+		public UnencodedMessage(int length) {
+			super(length);
+		}
+	}
+
+	private static void writeMessage(TestMessage message, ChannelBuffer buffer) {
+		for (int i = 0; i < message.getLength(); i++) {
+			buffer.writeByte(i);
+		}
+	}
+
+	public static class DirectCodec extends MessageCodec<DirectMessage> {
+		public DirectCodec() {
+			super(DirectMessage.class, 1);
+		}
+
+		@Override
+		public boolean encode(DirectMessage message, ChannelBuffer buffer) throws IOException {
+			writeMessage(message, buffer);
+			return true;
+		}
+	}
+
+	public static class CopiedCodec extends MessageCodec<CopiedMessage> {
+		public CopiedCodec() {
+			super(CopiedMessage.class, 2);
+		}
+
+		@Override
+		public ChannelBuffer encode(CopiedMessage message) throws IOException {
+			ChannelBuffer buffer = ChannelBuffers.buffer(message.getLength());
+			writeMessage(message, buffer);
+			return buffer;
+		}
+	}
+
+	public static class SidedCodec extends MessageCodec<SidedMessage> {
+		public SidedCodec() {
+			super(SidedMessage.class, 3);
+		}
+
+		@Override
+		public boolean encodeToClient(SidedMessage message, ChannelBuffer buffer) throws IOException {
+			writeMessage(message, buffer);
+			return true;
+		}
+	}
+
+	public static class UnencodedCodec extends MessageCodec<UnencodedMessage> {
+		public UnencodedCodec() {
+			super(UnencodedMessage.class, 4);
+		}
+	}
+
+	private static class TestCodecLookupService extends CodecLookupService {
+		public TestCodecLookupService() {
+			super(5);
+			try {
+				bind(DirectCodec.class);
+				bind(CopiedCodec.class);
+				bind(SidedCodec.class);
+				bind(UnencodedCodec.class);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * A protocol with a header of a one byte opcode followed by a two byte length
+	 */
+	private static class TestProtocol extends Protocol {
+		private final int maxHeaderLength;
+
+		public TestProtocol(int maxHeaderLength) {
+			super("EncoderTest", 0, new TestCodecLookupService(), new HandlerLookupService());
+			this.maxHeaderLength = maxHeaderLength;
+		}
+
+		@Override
+		public int getMaxHeaderLength() {
+			return maxHeaderLength;
+		}
+
+		@Override
+		public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
+			ChannelBuffer header = ChannelBuffers.buffer(3);
+			header.writeByte(codec.getOpcode());
+			header.writeShort(data.readableBytes());
+			return header;
+		}
+
+		@Override
+		public MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Message getKickMessage(String message) {
+			return null;
+		}
+
+		@Override
+		public Message getCommandMessage(Command command, CommandArguments args) {
+			return null;
+		}
+
+		@Override
+		public Message getIntroductionMessage(String playerName, InetSocketAddress addr) {
+			return null;
+		}
+
+		@Override
+		public void initializeServerSession(ServerSession session) {
+		}
+
+		@Override
+		public void initializeClientSession(ClientSession session) {
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class DeflateChannelProcessorTest {
+	private static final int CAPACITY = 256;
+	private static final int THRESHOLD = 64;
+	private static final int MESSAGES = 2000;
+
+	private final ChannelHandlerContext ctx = new FakeChannelHandlerContext();
+
+	@Test
+	public void testRoundTrip() {
+		Random r = new Random(1);
+		DeflateChannelProcessor deflate = new DeflateChannelProcessor(CAPACITY, THRESHOLD);
+		InflateChannelProcessor inflate = new InflateChannelProcessor(CAPACITY);
+
+		ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		int small = 0;
+		for (int i = 0; i < MESSAGES; i++) {
+			byte[] message = createMessage(r, r.nextInt(10) == 0 ? r.nextInt(5000) : r.nextInt(200));
+			if (message.length < THRESHOLD) {
+				small++;
+			}
+			expected.writeBytes(message);
+			stream.writeBytes(deflate.write(ctx, ChannelBuffers.wrappedBuffer(message)));
+		}
+		assertEquals(small, deflate.getUncompressedFrames());
+		assertEquals(MESSAGES - small, deflate.getCompressedFrames());
+		assertEquals(expected.readableBytes(), deflate.getBytesIn());
+		assertEquals(stream.readableBytes(), deflate.getBytesOut());
+		assertTrue(deflate.getCompressionRatio() < 1.0);
+
+		// Split the stream at random points, as it would arrive from the socket
+		ChannelBuffer processed = null;
+		ChannelBuffer output = ChannelBuffers.dynamicBuffer();
+		while (stream.readable()) {
+			ChannelBuffer part = stream.readBytes(Math.min(stream.readableBytes(), r.nextInt(700)));
+			processed = processed == null ? inflate.write(ctx, part) : inflate.write(ctx, part, processed);
+			output.writeBytes(processed, r.nextInt(processed.readableBytes() + 1));
+			processed.discardReadBytes();
+		}
+		output.writeBytes(processed);
+
+		assertArrayEquals(toArray(expected), toArray(output));
+		assertEquals(deflate.getBytesOut(), inflate.getBytesIn());
+		assertEquals(deflate.getBytesIn(), inflate.getBytesOut());
+		assertEquals(deflate.getCompressedFrames(), inflate.getCompressedFrames());
+		assertEquals(deflate.getCompressionRatio(), inflate.getCompressionRatio(), 0.0001);
+	}
+
+	@Test
+	public void testCompleteStreamFrames() {
+		// Frames written without sync flushing are each a complete deflate stream
+		Random r = new Random(2);
+		InflateChannelProcessor inflate = new InflateChannelProcessor(CAPACITY);
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+		byte[] compressed = new byte[10000];
+		for (int i = 0; i < 3; i++) {
+			byte[] message = createMessage(r, 1000);
+			expected.writeBytes(message);
+			Deflater deflater = new Deflater();
+			deflater.setInput(message);
+			deflater.finish();
+			int length = deflater.deflate(compressed);
+			ZlibChannelProcessor.writeHeader(stream, length, true);
+			stream.writeBytes(compressed, 0, length);
+		}
+		assertArrayEquals(toArray(expected), toArray(inflate.write(ctx, stream)));
+	}
+
+	@Test
+	public void testSpeed() {
+		Random r = new Random(3);
+		byte[][] messages = new byte[MESSAGES][];
+		long total = 0;
+		for (int i = 0; i < MESSAGES; i++) {
+			messages[i] = createMessage(r, r.nextInt(2000));
+			total += messages[i].length;
+		}
+		DeflateChannelProcessor deflate = new DeflateChannelProcessor(CAPACITY, THRESHOLD);
+		long start = System.nanoTime();
+		for (byte[] message : messages) {
+			deflate.write(ctx, ChannelBuffers.wrappedBuffer(message));
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("Compressed " + MESSAGES + " messages of " + total + " bytes to " + deflate.getBytesOut() + " bytes in " + (time / 1000000) + "ms, " + (deflate.getCpuTime() / 1000000) + "ms compressing");
+	}
+
+	/**
+	 * Creates a message that compresses like a game packet, with a few field values repeated
+	 */
+	private static byte[] createMessage(Random r, int length) {
+		byte[] message = new byte[length];
+		for (int i = 0; i < length; i++) {
+			message[i] = (byte) (r.nextInt(8) == 0 ? r.nextInt() : r.nextInt(4));
+		}
+		return message;
+	}
+
+	private static byte[] toArray(ChannelBuffer buffer) {
+		byte[] array = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), array);
+		return array;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.component.entity.SceneComponent;
+import org.spout.api.entity.Entity;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+
+public class EntityInterestGridTest {
+	private static final int CELL_SIZE = 16;
+	private static final int ENTER_RADIUS = 2;
+	private static final int LEAVE_RADIUS = 3;
+
+	private World world;
+	private EntityInterestGrid grid;
+	private Player player;
+	private ServerNetworkSynchronizer synchronizer;
+
+	@Before
+	public void setUp() {
+		world = mock(World.class);
+		grid = new EntityInterestGrid(world, CELL_SIZE, ENTER_RADIUS, LEAVE_RADIUS);
+		player = mock(Player.class);
+		mockScene(player);
+		moveTo(player, 0, 0, 0);
+		synchronizer = mock(ServerNetworkSynchronizer.class);
+		when(synchronizer.getPlayer()).thenReturn(player);
+		grid.addObserver(synchronizer);
+		grid.update(player);
+	}
+
+	@Test
+	public void testSpawnAndDestroy() {
+		Entity near = createEntity(CELL_SIZE * ENTER_RADIUS, 0, 0);
+		Entity far = createEntity(CELL_SIZE * (ENTER_RADIUS + 1), 0, 0);
+		grid.updateObservers();
+
+		assertSpawned(near, 1);
+		assertSpawned(far, 0);
+		assertSpawned(player, 0);
+		assertTrue(grid.getVisible(synchronizer).contains(near));
+		assertEquals(1, grid.getVisible(synchronizer).size());
+
+		// Moving inside the hysteresis band keeps the entity visible
+		moveTo(near, CELL_SIZE * LEAVE_RADIUS, 0, 0);
+		grid.update(near);
+		grid.updateObservers();
+		assertDestroyed(near, 0);
+
+		moveTo(near, CELL_SIZE * (LEAVE_RADIUS + 1), 0, 0);
+		grid.update(near);
+		grid.updateObservers();
+		assertDestroyed(near, 1);
+		assertFalse(grid.getVisible(synchronizer).contains(near));
+
+		// Moving back into the band doesn't spawn it again
+		moveTo(near, CELL_SIZE * LEAVE_RADIUS, 0, 0);
+		grid.update(near);
+		grid.updateObservers();
+		assertSpawned(near, 1);
+	}
+
+	@Test
+	public void testObserverMoves() {
+		Entity entity = createEntity(CELL_SIZE * 5, 0, 0);
+		grid.updateObservers();
+		assertSpawned(entity, 0);
+
+		moveTo(player, CELL_SIZE * 3, 0, 0);
+		grid.update(player);
+		grid.updateObservers();
+		assertSpawned(entity, 1);
+
+		moveTo(player, -CELL_SIZE * 2, 0, 0);
+		grid.update(player);
+		grid.updateObservers();
+		assertDestroyed(entity, 1);
+	}
+
+	@Test
+	public void testRemove() {
+		Entity entity = createEntity(0, 0, 0);
+		grid.updateObservers();
+		assertSpawned(entity, 1);
+
+		when(entity.isRemoved()).thenReturn(true);
+		grid.update(entity);
+		assertEquals(1, grid.getEntityCount());
+		grid.updateObservers();
+		assertDestroyed(entity, 1);
+		assertEquals(0, grid.getVisible(synchronizer).size());
+	}
+
+	@Test
+	public void testUnmovedNotChecked() {
+		createEntity(0, 0, 0);
+		grid.updateObservers();
+		reset(synchronizer);
+		when(synchronizer.getPlayer()).thenReturn(player);
+
+		grid.updateObservers();
+		verify(synchronizer, never()).syncEntity(any(Entity.class), any(Transform.class), anyBoolean(), anyBoolean(), anyBoolean());
+	}
+
+	private Entity createEntity(float x, float y, float z) {
+		Entity e = mock(Entity.class);
+		mockScene(e);
+		moveTo(e, x, y, z);
+		grid.update(e);
+		return e;
+	}
+
+	private void mockScene(Entity e) {
+		SceneComponent scene = mock(SceneComponent.class);
+		when(e.getScene()).thenReturn(scene);
+	}
+
+	private void moveTo(Entity e, float x, float y, float z) {
+		when(e.getScene().getPosition()).thenReturn(new Point(world, x, y, z));
+	}
+
+	private void assertSpawned(Entity e, int count) {
+		verify(synchronizer, times(count)).syncEntity(e, null, true, false, false);
+	}
+
+	private void assertDestroyed(Entity e, int count) {
+		verify(synchronizer, times(count)).syncEntity(e, null, false, true, false);
+	}
+}
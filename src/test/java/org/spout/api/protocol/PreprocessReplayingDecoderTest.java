@@ -26,6 +26,8 @@
  */
 package org.spout.api.protocol;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.net.SocketAddress;
@@ -137,6 +139,65 @@ public class PreprocessReplayingDecoderTest {
 
 	}
 
+	@Test
+	public void testFramed() throws Exception {
+		FramedPreprocessor p = new FramedPreprocessor(512);
+		List<ChannelEvent> outputList = new LinkedList<ChannelEvent>();
+		ChannelHandlerContext fake = new FakeChannelHandlerContext(outputList);
+		Random r = new Random();
+
+		// Frames are a 2 byte length followed by the payload
+		ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+		List<byte[]> payloads = new LinkedList<byte[]>();
+		for (int i = 0; i < 200; i++) {
+			byte[] payload = new byte[r.nextInt(10) == 0 ? r.nextInt(20000) : r.nextInt(100)];
+			r.nextBytes(payload);
+			payloads.add(payload);
+			input.writeShort(payload.length);
+			input.writeBytes(payload);
+		}
+
+		while (input.readable()) {
+			int burstSize = Math.min(input.readableBytes(), r.nextInt(64) + 1);
+			final ChannelBuffer buf = ChannelBuffers.buffer(burstSize);
+			input.readBytes(buf, burstSize);
+			p.messageReceived(fake, new UpstreamMessageEvent(fake.getChannel(), buf, null));
+		}
+
+		assertEquals(payloads.size(), outputList.size());
+		// Each frame is decoded once, rather than replayed for each burst
+		assertEquals(payloads.size(), p.decodeCount);
+		int i = 0;
+		for (byte[] payload : payloads) {
+			byte[] output = (byte[]) ((UpstreamMessageEvent) outputList.get(i++)).getMessage();
+			assertArrayEquals(payload, output);
+		}
+	}
+
+	private static class FramedPreprocessor extends PreprocessReplayingDecoder {
+		private int decodeCount = 0;
+
+		public FramedPreprocessor(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		protected int getFrameLength(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+			if (buffer.readableBytes() < 2) {
+				return FRAME_INCOMPLETE;
+			}
+			return 2 + buffer.getUnsignedShort(buffer.readerIndex());
+		}
+
+		@Override
+		protected Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+			decodeCount++;
+			byte[] payload = new byte[buffer.readUnsignedShort()];
+			buffer.readBytes(payload);
+			return payload;
+		}
+	}
+
 	private static class Preprocessor extends PreprocessReplayingDecoder {
 
 		private final int breakPoint;
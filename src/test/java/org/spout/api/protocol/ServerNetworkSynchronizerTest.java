@@ -0,0 +1,166 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+import org.spout.api.math.Vector3;
+
+public class ServerNetworkSynchronizerTest {
+	private static final int CHUNKS = 25;
+
+	@Test
+	public void testMultipleChunksSent() {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		Chunk[] chunks = new Chunk[CHUNKS];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = createChunk(i, 0, 0);
+			synchronizer.queueChunk(chunks[i]);
+		}
+		// Sending the nearest chunk also sends the next two, and the fourth chunk is sent as the fifth
+		synchronizer.sentWith.put(chunks[0], Arrays.asList(chunks[0], chunks[1], chunks[2]));
+		synchronizer.sentWith.put(chunks[3], Arrays.asList(chunks[4]));
+
+		synchronizer.sendQueuedChunks(new Transform(new Point((World) null, 0, 0, 0), Quaternion.IDENTITY, Vector3.ONE));
+
+		ChunkSendQueue queue = synchronizer.getChunkSendQueue();
+		assertEquals(ServerNetworkSynchronizer.CHUNKS_PER_TICK, queue.getTotalChunksSent());
+		assertEquals(CHUNKS - ServerNetworkSynchronizer.CHUNKS_PER_TICK, queue.getSize());
+		assertEquals(ServerNetworkSynchronizer.CHUNKS_PER_TICK - 3, synchronizer.sent.size());
+		assertFalse(synchronizer.sent.contains(chunks[1]));
+		assertFalse(synchronizer.sent.contains(chunks[2]));
+		assertFalse(synchronizer.sent.contains(chunks[4]));
+		for (int i = 0; i < ServerNetworkSynchronizer.CHUNKS_PER_TICK; i++) {
+			assertFalse(queue.contains(chunks[i]));
+		}
+	}
+
+	@Test
+	public void testFlushBlockUpdates() {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		Chunk changed = createChunk(0, 0, 0);
+		Chunk overflowed = createChunk(1, 0, 0);
+		Chunk blocked = createChunk(2, 0, 0);
+		Chunk inactive = createChunk(3, 0, 0);
+		synchronizer.active.addAll(Arrays.asList(changed, overflowed, blocked));
+		synchronizer.blocked.add(blocked);
+
+		synchronizer.blockUpdates.add(changed, 1, 2, 3, (short) 1, (short) 0);
+		synchronizer.blockUpdates.add(inactive, 1, 2, 3, (short) 1, (short) 0);
+		for (Chunk c : new Chunk[] {overflowed, blocked}) {
+			for (int i = 0; i <= ServerNetworkSynchronizer.BLOCK_UPDATE_THRESHOLD; i++) {
+				synchronizer.blockUpdates.add(c, i & 0xF, (i >> 4) & 0xF, i >> 8, (short) 1, (short) 0);
+			}
+		}
+		synchronizer.flushBlockUpdates();
+
+		assertEquals(Arrays.asList(changed), synchronizer.updated);
+		// Overflowed chunks are sent in full, unless they can't be sent yet
+		assertEquals(Arrays.asList(overflowed), synchronizer.sent);
+		assertTrue(synchronizer.getChunkSendQueue().contains(blocked));
+		assertFalse(synchronizer.getChunkSendQueue().contains(inactive));
+		assertEquals(0, synchronizer.blockUpdates.size());
+	}
+
+	private static Chunk createChunk(int x, int y, int z) {
+		Chunk c = mock(Chunk.class);
+		when(c.getBlockX()).thenReturn(x << Chunk.BLOCKS.BITS);
+		when(c.getBlockY()).thenReturn(y << Chunk.BLOCKS.BITS);
+		when(c.getBlockZ()).thenReturn(z << Chunk.BLOCKS.BITS);
+		return c;
+	}
+
+	private static class TestSynchronizer extends ServerNetworkSynchronizer {
+		private final Map<Chunk, Collection<Chunk>> sentWith = new HashMap<Chunk, Collection<Chunk>>();
+		private final List<Chunk> sent = new ArrayList<Chunk>();
+		private final List<Chunk> updated = new ArrayList<Chunk>();
+		private final Set<Chunk> active = new HashSet<Chunk>();
+		private final Set<Chunk> blocked = new HashSet<Chunk>();
+
+		public TestSynchronizer() {
+			super(mock(Session.class), 4);
+		}
+
+		@Override
+		public Set<Chunk> getActiveChunks() {
+			return new HashSet<Chunk>(active);
+		}
+
+		@Override
+		protected boolean canSendChunk(Chunk c) {
+			return !blocked.contains(c);
+		}
+
+		@Override
+		protected void sendBlockUpdates(ChunkBlockUpdates updates) {
+			updated.add(updates.getChunk());
+		}
+
+		@Override
+		protected Collection<Chunk> doSendChunk(Chunk c) {
+			sent.add(c);
+			Collection<Chunk> with = sentWith.get(c);
+			return with == null ? Collections.singleton(c) : with;
+		}
+
+		@Override
+		protected void initChunk(Point p) {
+		}
+
+		@Override
+		protected void freeChunk(Point p) {
+		}
+
+		@Override
+		protected void sendPosition(Point p, Quaternion rot) {
+		}
+
+		@Override
+		protected void worldChanged(World world) {
+		}
+	}
+}
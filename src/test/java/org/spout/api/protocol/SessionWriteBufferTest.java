@@ -0,0 +1,118 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class SessionWriteBufferTest {
+	@Test
+	public void testFlush() {
+		SessionWriteBuffer buffer = new SessionWriteBuffer();
+		Channel channel = mock(Channel.class);
+		assertNull(buffer.flush(channel));
+		verify(channel, never()).write(any());
+
+		Message[] messages = {mock(Message.class), mock(Message.class), mock(Message.class)};
+		for (Message message : messages) {
+			buffer.add(message);
+		}
+		assertEquals(3, buffer.size());
+		buffer.flush(channel);
+		verify(channel, times(1)).write(new MessageBatch(Arrays.asList(messages)));
+		assertEquals(0, buffer.size());
+
+		// A single message is written without a batch
+		buffer.add(messages[0]);
+		buffer.flush(channel);
+		verify(channel, times(1)).write(messages[0]);
+
+		assertEquals(2, buffer.getFlushCount());
+		assertEquals(4, buffer.getMessageCount());
+	}
+
+	@Test
+	public void testSetupMessage() {
+		SessionWriteBuffer buffer = new SessionWriteBuffer();
+		Channel channel = mock(Channel.class);
+		Message[] messages = {mock(Message.class), mock(Message.class), mock(ProcessorSetupMessage.class), mock(Message.class), mock(Message.class)};
+		for (Message message : messages) {
+			buffer.add(message);
+		}
+		buffer.flush(channel);
+
+		// The setup message must reach the encoder on its own to install its processor
+		InOrder order = inOrder(channel);
+		order.verify(channel).write(new MessageBatch(Arrays.asList(messages[0], messages[1])));
+		order.verify(channel).write(messages[2]);
+		order.verify(channel).write(new MessageBatch(Arrays.asList(messages[3], messages[4])));
+		assertEquals(3, buffer.getFlushCount());
+		assertEquals(5, buffer.getMessageCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchedSetupMessage() {
+		new MessageBatch(Arrays.asList(mock(Message.class), mock(ProcessorSetupMessage.class)));
+	}
+
+	@Test
+	public void testForcedWrite() {
+		SessionWriteBuffer buffer = new SessionWriteBuffer();
+		Channel channel = mock(Channel.class);
+		Message buffered = mock(Message.class);
+		Message forced = mock(Message.class);
+		buffer.add(buffered);
+		buffer.write(channel, forced);
+
+		InOrder order = inOrder(channel);
+		order.verify(channel).write(buffered);
+		order.verify(channel).write(forced);
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void testClear() {
+		SessionWriteBuffer buffer = new SessionWriteBuffer();
+		Channel channel = mock(Channel.class);
+		buffer.add(mock(Message.class));
+		buffer.clear();
+		assertNull(buffer.flush(channel));
+		verify(channel, never()).write(any());
+	}
+}
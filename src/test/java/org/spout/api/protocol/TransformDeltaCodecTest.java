@@ -0,0 +1,222 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.spout.api.component.entity.SceneComponent;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+import org.spout.api.math.Vector3;
+
+public class TransformDeltaCodecTest {
+	private static final float PRECISION = 1F / 32;
+	private static final float ROTATION_ERROR = 0.002F;
+	private static final int FULL_TRANSFORM_BYTES = 10 * 4;
+
+	private final World world = mock(World.class);
+
+	@Test
+	public void testRoundTrip() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		TransformDeltaCodec decoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		Random r = new Random(1);
+
+		Transform transform = createTransform(100, 64, -200, new Quaternion(30, 0, 1, 0), Vector3.ONE);
+		encoder.encodeFull(buffer, transform);
+		assertTransform(transform, decoder.decode(buffer, world));
+
+		float x = 100, y = 64, z = -200;
+		for (int i = 0; i < 1000; i++) {
+			int scale = r.nextInt(100);
+			x += (r.nextFloat() - 0.5F) * scale;
+			y += (r.nextFloat() - 0.5F) * scale;
+			z += (r.nextFloat() - 0.5F) * scale;
+			Quaternion rotation = new Quaternion(r.nextFloat() * 360, r.nextFloat() - 0.5F, r.nextFloat() - 0.5F, r.nextFloat() - 0.5F);
+			transform = createTransform(x, y, z, rotation, Vector3.ONE);
+			encoder.encode(buffer, transform, true, true, false);
+			assertTransform(transform, decoder.decode(buffer, world));
+		}
+		assertEquals(0, buffer.readableBytes());
+	}
+
+	@Test
+	public void testNoDrift() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		TransformDeltaCodec decoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+
+		float x = 0;
+		encoder.encodeFull(buffer, createTransform(x, 0, 0, Quaternion.IDENTITY, Vector3.ONE));
+		decoder.decode(buffer, world);
+		Transform decoded = null;
+		for (int i = 0; i < 10000; i++) {
+			// Each step is smaller than the precision
+			x += PRECISION / 3;
+			encoder.encode(buffer, createTransform(x, 0, 0, Quaternion.IDENTITY, Vector3.ONE), true, false, false);
+			decoded = decoder.decode(buffer, world);
+		}
+		assertEquals(x, decoded.getPosition().getX(), PRECISION);
+	}
+
+	@Test
+	public void testSizes() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		Quaternion rotation = new Quaternion(45, 1, 0, 0);
+		Vector3 scale = new Vector3(2, 2, 2);
+
+		encoder.encodeFull(buffer, createTransform(0, 0, 0, rotation, scale));
+		assertEquals(1 + 12 + 4 + 12, drain(buffer));
+
+		// Small move, rotation and scale unchanged
+		encoder.encode(buffer, createTransform(1, 0, 0, rotation, scale), true, true, true);
+		assertEquals(1 + 3, drain(buffer));
+
+		// Larger move
+		encoder.encode(buffer, createTransform(100, 0, 0, rotation, scale), true, false, false);
+		assertEquals(1 + 6, drain(buffer));
+
+		// Teleport
+		encoder.encode(buffer, createTransform(100000, 0, 0, rotation, scale), true, false, false);
+		assertEquals(1 + 12, drain(buffer));
+
+		// Rotation only
+		encoder.encode(buffer, createTransform(100000, 0, 0, Quaternion.IDENTITY, scale), false, true, false);
+		assertEquals(1 + 4, drain(buffer));
+
+		// Scale only
+		encoder.encode(buffer, createTransform(100000, 0, 0, Quaternion.IDENTITY, Vector3.ONE), false, false, true);
+		assertEquals(1 + 12, drain(buffer));
+
+		// Nothing dirty
+		encoder.encode(buffer, createTransform(0, 0, 0, rotation, scale), false, false, false);
+		assertEquals(1, drain(buffer));
+	}
+
+	@Test
+	public void testOutOfRange() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		TransformDeltaCodec decoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+
+		// Quantized, these positions do not fit in an int, and neither does the change between them
+		float[] positions = {0, 1E9F, -1E9F, 1E9F + 1024, 100, Float.MAX_VALUE, -Float.MAX_VALUE, 0};
+		encoder.encodeFull(buffer, createTransform(0, 0, 0, Quaternion.IDENTITY, Vector3.ONE));
+		decoder.decode(buffer, world);
+		for (float p : positions) {
+			Transform transform = createTransform(p, 64, -p, Quaternion.IDENTITY, Vector3.ONE);
+			encoder.encode(buffer, transform, true, false, false);
+			Point decoded = decoder.decode(buffer, world).getPosition();
+			assertEquals(p, decoded.getX(), Math.max(PRECISION, Math.ulp(p)));
+			assertEquals(64, decoded.getY(), PRECISION);
+			assertEquals(-p, decoded.getZ(), Math.max(PRECISION, Math.ulp(p)));
+		}
+		assertEquals(0, buffer.readableBytes());
+	}
+
+	@Test
+	public void testSceneComponent() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		TransformDeltaCodec decoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		encoder.encodeFull(buffer, createTransform(0, 0, 0, Quaternion.IDENTITY, Vector3.ONE));
+		decoder.decode(buffer, world);
+
+		Transform transform = createTransform(1, 2, 3, new Quaternion(90, 0, 1, 0), Vector3.ONE);
+		SceneComponent scene = mock(SceneComponent.class);
+		when(scene.getTransform()).thenReturn(transform);
+		when(scene.isPositionDirty()).thenReturn(true);
+		encoder.encode(buffer, scene);
+		assertEquals(1 + 3, buffer.readableBytes());
+
+		Transform decoded = decoder.decode(buffer, world);
+		assertEquals(transform.getPosition().getX(), decoded.getPosition().getX(), PRECISION);
+		// The rotation was not dirty, so it is not sent
+		assertEquals(1, decoded.getRotation().getW(), ROTATION_ERROR);
+	}
+
+	@Test
+	public void testSpeed() {
+		TransformDeltaCodec encoder = new TransformDeltaCodec(PRECISION);
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1 << 20);
+		Random r = new Random(2);
+		int entities = 100000;
+		Transform[] transforms = new Transform[entities];
+		float x = 0;
+		for (int i = 0; i < entities; i++) {
+			x += r.nextFloat();
+			transforms[i] = createTransform(x, 64, 0, new Quaternion(r.nextFloat() * 360, 0, 1, 0), Vector3.ONE);
+		}
+		encoder.encodeFull(buffer, transforms[0]);
+		buffer.clear();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < entities; i++) {
+			encoder.encode(buffer, transforms[i], true, true, false);
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("Encoded " + entities + " transform updates in " + (time / 1000000) + "ms, " + buffer.readableBytes() + " bytes instead of " + (entities * FULL_TRANSFORM_BYTES));
+		assertTrue(buffer.readableBytes() * 4 < entities * FULL_TRANSFORM_BYTES);
+	}
+
+	private Transform createTransform(float x, float y, float z, Quaternion rotation, Vector3 scale) {
+		return new Transform(new Point(world, x, y, z), rotation, scale);
+	}
+
+	private static int drain(ChannelBuffer buffer) {
+		int bytes = buffer.readableBytes();
+		buffer.clear();
+		return bytes;
+	}
+
+	private static void assertTransform(Transform expected, Transform actual) {
+		Point p = expected.getPosition();
+		Point q = actual.getPosition();
+		assertEquals(p.getX(), q.getX(), PRECISION);
+		assertEquals(p.getY(), q.getY(), PRECISION);
+		assertEquals(p.getZ(), q.getZ(), PRECISION);
+
+		Quaternion a = expected.getRotation().normalize();
+		Quaternion b = actual.getRotation();
+		float dot = a.getX() * b.getX() + a.getY() * b.getY() + a.getZ() * b.getZ() + a.getW() * b.getW();
+		assertEquals(1, Math.abs(dot), ROTATION_ERROR);
+
+		assertEquals(expected.getScale().getX(), actual.getScale().getX(), 0);
+	}
+}
@@ -288,7 +288,7 @@ public class FakeChannelHandlerContext implements ChannelHandlerContext {
 
 		@Override
 		public ChannelBuffer getBuffer(ByteOrder endianness, int capacity) {
-			return null;
+			return ChannelBuffers.buffer(endianness, capacity);
 		}
 
 		@Override
@@ -308,7 +308,7 @@ public class FakeChannelHandlerContext implements ChannelHandlerContext {
 
 		@Override
 		public ByteOrder getDefaultOrder() {
-			return null;
+			return ByteOrder.BIG_ENDIAN;
 		}
 
 	}
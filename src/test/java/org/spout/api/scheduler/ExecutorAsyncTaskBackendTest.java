@@ -0,0 +1,152 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ExecutorAsyncTaskBackendTest {
+	private static final int TASKS = 200;
+
+	@Test
+	public void testBlockingTasks() throws InterruptedException {
+		AsyncTaskBackend backend = ExecutorAsyncTaskBackend.create("Test Async", TASKS);
+		runBlockingTasks(backend);
+		backend.shutdown();
+	}
+
+	@Test
+	public void testBoundedPool() throws InterruptedException {
+		final AsyncTaskBackend backend = ExecutorAsyncTaskBackend.createBounded("Test Bounded", 4);
+		final AtomicInteger maxActive = new AtomicInteger(0);
+		for (int i = 0; i < 20; i++) {
+			final CountDownLatch done = new CountDownLatch(1);
+			backend.execute(new Runnable() {
+				@Override
+				public void run() {
+					int active = backend.getActiveCount();
+					synchronized (maxActive) {
+						maxActive.set(Math.max(maxActive.get(), active));
+					}
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		assertTrue(maxActive.get() <= 4);
+		backend.shutdown();
+	}
+
+	@Test
+	public void testBoundedPoolGrows() throws InterruptedException {
+		AsyncTaskBackend backend = ExecutorAsyncTaskBackend.createBounded("Test Grow", 4);
+		final CountDownLatch started = new CountDownLatch(8);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 8; i++) {
+			backend.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+		}
+		// Tasks past the bound must not wait behind the blocked ones
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(8, backend.getActiveCount());
+		release.countDown();
+		backend.shutdown();
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testBoundedPoolShutdown() {
+		AsyncTaskBackend backend = ExecutorAsyncTaskBackend.createBounded("Test Shutdown", 1);
+		backend.shutdown();
+		backend.execute(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	@Test
+	public void testShutdownInterrupts() throws InterruptedException {
+		AsyncTaskBackend backend = ExecutorAsyncTaskBackend.create("Test Interrupt", 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		backend.execute(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		backend.shutdown();
+		assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+	}
+
+	private void runBlockingTasks(AsyncTaskBackend backend) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(TASKS);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(TASKS);
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++) {
+			backend.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+					done.countDown();
+				}
+			});
+		}
+		// Every task blocks at once, which needs a thread each
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(TASKS, backend.getActiveCount());
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		System.out.println((backend.isLightweight() ? "Virtual" : "Pooled") + " threads ran " + TASKS + " blocking tasks in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SimpleSnapshotLockTest {
+	private volatile long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	@Test
+	public void testHoldTimes() {
+		SimpleSnapshotLock lock = new SimpleSnapshotLock(clock);
+		Object plugin = new Object();
+		lock.readLock(plugin);
+		time += 100;
+		assertTrue(lock.readTryLock(plugin));
+		time += 50;
+		lock.readUnlock(plugin);
+		lock.readUnlock(plugin);
+
+		Histogram holdTimes = lock.getHoldTimes().get(plugin);
+		assertEquals(2, holdTimes.getCount());
+		assertEquals(200L, holdTimes.getTotal());
+		assertTrue(lock.getHolders().isEmpty());
+
+		lock.writeLock();
+		assertTrue(lock.isWriteLocked());
+		assertFalse(lock.readTryLock(plugin));
+		lock.writeUnlock();
+		assertEquals(1, lock.getWriterWaitTimes().getCount());
+	}
+
+	@Test
+	public void testWriterWait() throws InterruptedException {
+		final SimpleSnapshotLock lock = new SimpleSnapshotLock(clock);
+		final Object slow = new Object();
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				lock.readLock(slow);
+				locked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				time += 1000;
+				lock.readUnlock(slow);
+			}
+		};
+		reader.start();
+		assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				lock.writeLock();
+			}
+		};
+		writer.start();
+		while (!writer.getState().equals(Thread.State.WAITING)) {
+			Thread.sleep(1);
+		}
+		// New readers wait for the writer
+		assertFalse(lock.readTryLock(this));
+		release.countDown();
+		writer.join(10000);
+		assertTrue(lock.isWriteLocked());
+		assertEquals(1000L, lock.getWriterWaitTimes().getMax());
+		assertEquals(Long.valueOf(1000L), lock.getSnapshotDelays().get(slow));
+		lock.writeUnlock();
+	}
+
+	@Test
+	public void testLeaseRevoked() {
+		SimpleSnapshotLock lock = new SimpleSnapshotLock(clock);
+		Object plugin = new Object();
+		SnapshotReadLease lease = lock.readLock(plugin, 10, TimeUnit.MILLISECONDS);
+		assertTrue(lease.isValid());
+		assertEquals(1, lock.getHolders().size());
+
+		time += TimeUnit.MILLISECONDS.toNanos(20);
+		lock.writeLock();
+		assertFalse(lease.isValid());
+		assertEquals(Integer.valueOf(1), lock.getRevocations().get(plugin));
+		assertTrue(lock.getHolders().isEmpty());
+		// Releasing a revoked lease has no effect
+		lease.release();
+		lock.writeUnlock();
+
+		lease = lock.readLock(plugin, 10, TimeUnit.MILLISECONDS);
+		lease.release();
+		assertFalse(lease.isValid());
+		lock.writeLock();
+		assertEquals(Integer.valueOf(1), lock.getRevocations().get(plugin));
+		lock.writeUnlock();
+	}
+}
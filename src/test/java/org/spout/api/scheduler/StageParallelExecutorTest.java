@@ -0,0 +1,154 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class StageParallelExecutorTest {
+	private static final int ITEMS = 10000;
+
+	private List<Integer> createItems() {
+		List<Integer> items = new ArrayList<Integer>(ITEMS);
+		for (int i = 0; i < ITEMS; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+
+	@Test
+	public void testParallelFor() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("Test Parallel For", 4);
+		StageParallelExecutor executor = new StageParallelExecutor(pool);
+		final AtomicLong sum = new AtomicLong(0);
+		executor.parallelFor(createItems(), new ParallelForBody<Integer>() {
+			@Override
+			public void run(Integer item) {
+				sum.addAndGet(item);
+			}
+		});
+		assertEquals((long) ITEMS * (ITEMS - 1) / 2, sum.get());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testBodyException() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("Test Body Exception", 4);
+		StageParallelExecutor executor = new StageParallelExecutor(pool);
+		final IllegalStateException thrown = new IllegalStateException("Test");
+		final AtomicInteger count = new AtomicInteger(0);
+		try {
+			executor.parallelFor(createItems(), new ParallelForBody<Integer>() {
+				@Override
+				public void run(Integer item) {
+					if (item == 0) {
+						throw thrown;
+					}
+					count.incrementAndGet();
+				}
+			});
+			fail("The body exception was not rethrown");
+		} catch (RuntimeException e) {
+			assertSame(thrown, e.getCause());
+		}
+		// Only the rest of the failed chunk is skipped
+		assertTrue(count.get() >= ITEMS - ITEMS / (4 * pool.getParallelism()));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testStageJobs() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("Test Stage Jobs", 4);
+		StageParallelExecutor executor = new StageParallelExecutor(pool);
+		final AtomicInteger physics = new AtomicInteger(0);
+		final AtomicInteger lighting = new AtomicInteger(0);
+		ParallelForBody<Object> countPhysics = new ParallelForBody<Object>() {
+			@Override
+			public void run(Object item) {
+				physics.incrementAndGet();
+			}
+		};
+		executor.submit(TickStage.PHYSICS, createItems(), countPhysics);
+		executor.submit(TickStage.PHYSICS, createItems(), countPhysics);
+		executor.submit(TickStage.LIGHTING, createItems(), new ParallelForBody<Integer>() {
+			@Override
+			public void run(Integer item) {
+				lighting.incrementAndGet();
+			}
+		});
+		assertEquals(2, executor.getPendingCount(TickStage.PHYSICS));
+
+		assertEquals(2, executor.runStage(TickStage.PHYSICS));
+		assertEquals(2 * ITEMS, physics.get());
+		assertEquals(0, lighting.get());
+		assertEquals(0, executor.runStage(TickStage.PHYSICS));
+
+		assertEquals(1, executor.runStage(TickStage.LIGHTING));
+		assertEquals(ITEMS, lighting.get());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testSpeed() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("Test Parallel For Speed");
+		StageParallelExecutor executor = new StageParallelExecutor(pool);
+		List<Integer> items = createItems();
+		final long[] results = new long[ITEMS];
+		ParallelForBody<Integer> body = new ParallelForBody<Integer>() {
+			@Override
+			public void run(Integer item) {
+				long x = item;
+				for (int i = 0; i < 2000; i++) {
+					x = x * 6364136223846793005L + 1442695040888963407L;
+				}
+				results[item] = x;
+			}
+		};
+
+		long start = System.nanoTime();
+		for (Integer item : items) {
+			body.run(item);
+		}
+		long serial = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		executor.parallelFor(items, body);
+		long parallel = System.nanoTime() - start;
+
+		System.out.println("Serial loop: " + (serial / 1000) + "us, parallel loop on " + pool.getParallelism() + " threads: " + (parallel / 1000) + "us");
+		pool.shutdown();
+	}
+}
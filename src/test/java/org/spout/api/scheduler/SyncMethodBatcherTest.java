@@ -0,0 +1,105 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class SyncMethodBatcherTest {
+	@Test
+	public void testBatching() throws Exception {
+		TaskManager manager = Mockito.mock(TaskManager.class);
+		Object plugin = new Object();
+		SyncMethodBatcher batcher = new SyncMethodBatcher(manager, plugin);
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			futures.add(batcher.call(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return value * 2;
+				}
+			}));
+		}
+		Future<Object> failed = batcher.call(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				throw new IllegalStateException("failed");
+			}
+		});
+		Future<Object> cancelled = batcher.call(new Callable<Object>() {
+			@Override
+			public Object call() {
+				fail("Cancelled calls should not run");
+				return null;
+			}
+		});
+		assertTrue(cancelled.cancel(false));
+		assertEquals(102, batcher.getPendingCount());
+		assertFalse(futures.get(0).isDone());
+
+		// A single task drains every queued call
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		Mockito.verify(manager, Mockito.times(1)).scheduleSyncDelayedTask(Mockito.eq(plugin), task.capture(), Mockito.eq(TaskPriority.CRITICAL));
+		task.getValue().run();
+		assertEquals(0, batcher.getPendingCount());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i * 2), futures.get(i).get());
+		}
+		try {
+			failed.get();
+			fail("The exception should be passed to the future");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertNull(cancelled.get());
+
+		// Calls after the drain schedule a new task
+		batcher.call(new Callable<Object>() {
+			@Override
+			public Object call() {
+				return null;
+			}
+		});
+		Mockito.verify(manager, Mockito.times(2)).scheduleSyncDelayedTask(Mockito.eq(plugin), Mockito.any(Runnable.class), Mockito.eq(TaskPriority.CRITICAL));
+		assertEquals(1, batcher.drain());
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Region;
+
+public class SyncTaskWatchdogTest {
+	private long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	@Test
+	public void testCapture() {
+		SyncTaskWatchdog watchdog = new SyncTaskWatchdog(clock, 50, TimeUnit.MILLISECONDS, 10);
+		Object plugin = new Object();
+
+		watchdog.taskStarted(new TestTask(1, plugin));
+		time += TimeUnit.MILLISECONDS.toNanos(20);
+		assertFalse(watchdog.check());
+		watchdog.taskFinished();
+
+		watchdog.taskStarted(new TestTask(2, plugin));
+		time += TimeUnit.MILLISECONDS.toNanos(60);
+		assertTrue(watchdog.check());
+		// Only one report is captured per execution
+		assertFalse(watchdog.check());
+		time += TimeUnit.MILLISECONDS.toNanos(40);
+		watchdog.taskFinished();
+
+		List<SlowTaskReport> reports = watchdog.pollReports();
+		assertEquals(1, reports.size());
+		SlowTaskReport report = reports.get(0);
+		assertEquals(2, report.getTaskId());
+		assertEquals(plugin, report.getOwner());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(60), report.getStallTime());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), report.getRunTime());
+		// The stack of the thread running the task is captured
+		assertEquals(getClass().getName(), findFrame(report.getStackTrace()));
+		assertEquals(0, watchdog.pollReports().size());
+	}
+
+	@Test
+	public void testFinishedDuringCheck() {
+		final SyncTaskWatchdog[] watchdog = new SyncTaskWatchdog[1];
+		// The task finishes as soon as the watchdog reads the time
+		SchedulerClock finishingClock = new SchedulerClock() {
+			private int reads = 0;
+
+			@Override
+			public long nanoTime() {
+				if (++reads == 2) {
+					watchdog[0].taskFinished();
+				}
+				return reads == 1 ? 0 : TimeUnit.MILLISECONDS.toNanos(100);
+			}
+		};
+		watchdog[0] = new SyncTaskWatchdog(finishingClock, 50, TimeUnit.MILLISECONDS, 10);
+		watchdog[0].taskStarted(new TestTask(1, this));
+		assertFalse(watchdog[0].check());
+		assertEquals(0, watchdog[0].getReports().size());
+	}
+
+	@Test
+	public void testMaxReports() {
+		SyncTaskWatchdog watchdog = new SyncTaskWatchdog(clock, 1, TimeUnit.MILLISECONDS, 3);
+		for (int i = 0; i < 5; i++) {
+			watchdog.taskStarted(new TestTask(i, this));
+			time += TimeUnit.MILLISECONDS.toNanos(2);
+			watchdog.check();
+			watchdog.taskFinished();
+		}
+		List<SlowTaskReport> reports = watchdog.getReports();
+		assertEquals(3, reports.size());
+		assertEquals(2, reports.get(0).getTaskId());
+	}
+
+	private String findFrame(StackTraceElement[] stackTrace) {
+		for (StackTraceElement e : stackTrace) {
+			if (e.getClassName().equals(getClass().getName())) {
+				return e.getClassName();
+			}
+		}
+		return null;
+	}
+
+	private static class TestTask implements Task {
+		private final int id;
+		private final Object owner;
+
+		public TestTask(int id, Object owner) {
+			this.id = id;
+			this.owner = owner;
+		}
+
+		@Override
+		public int getTaskId() {
+			return id;
+		}
+
+		@Override
+		public Object getOwner() {
+			return owner;
+		}
+
+		@Override
+		public boolean isSync() {
+			return true;
+		}
+
+		@Override
+		public boolean isAlive() {
+			return true;
+		}
+
+		@Override
+		public boolean isExecuting() {
+			return true;
+		}
+
+		@Override
+		public Task getChildTask(Region region) {
+			return null;
+		}
+
+		@Override
+		public boolean isLongLived() {
+			return false;
+		}
+
+		@Override
+		public void cancel() {
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TaskMetricsTest {
+	private long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000L, histogram.getMin());
+		assertEquals(1000000L, histogram.getMax());
+		assertEquals(500500.0, histogram.getMean(), 0.001);
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 500000 && median <= 500000 * 1.125);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990000 && p99 <= 1000000);
+		assertEquals(1000000L, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testRollingWindow() {
+		RollingHistogram histogram = new RollingHistogram(clock, 10, TimeUnit.SECONDS, 10);
+		histogram.record(5);
+		time += TimeUnit.SECONDS.toNanos(5);
+		histogram.record(10);
+		assertEquals(2, histogram.getSnapshot().getCount());
+		time += TimeUnit.SECONDS.toNanos(6);
+		assertEquals(1, histogram.getSnapshot().getCount());
+		assertEquals(10L, histogram.getSnapshot().getMax());
+		time += TimeUnit.SECONDS.toNanos(100);
+		assertEquals(0, histogram.getSnapshot().getCount());
+	}
+
+	@Test
+	public void testMetrics() {
+		TaskMetrics metrics = new TaskMetrics(clock, 60, TimeUnit.SECONDS, 12);
+		Object plugin = new Object();
+		Object other = new Object();
+		metrics.record(plugin, TaskPriority.NORMAL, 100, 2000);
+		metrics.record(plugin, TaskPriority.NORMAL, 300, 4000);
+		metrics.record(plugin, TaskPriority.CRITICAL, 0, 1000);
+		metrics.record(other, TaskPriority.NORMAL, 0, 1000);
+
+		assertEquals(3, metrics.getStatistics().size());
+		List<TaskStatistics> statistics = metrics.getStatistics(plugin);
+		assertEquals(2, statistics.size());
+		for (TaskStatistics s : statistics) {
+			if (s.getPriority() == TaskPriority.NORMAL) {
+				assertEquals(2, s.getRunCount());
+				assertEquals(6000L, s.getRunTimes().getTotal());
+				assertEquals(300L, s.getQueueDelays().getMax());
+			} else {
+				assertEquals(1, s.getRunCount());
+			}
+		}
+
+		metrics.remove(plugin);
+		assertEquals(1, metrics.getStatistics().size());
+		assertEquals(other, metrics.getStatistics().get(0).getOwner());
+	}
+
+	@Test
+	public void testCollectedOwner() throws InterruptedException {
+		TaskMetrics metrics = new TaskMetrics(clock, 60, TimeUnit.SECONDS, 12);
+		Object plugin = new Object();
+		metrics.record(plugin, TaskPriority.NORMAL, 0, 1000);
+		metrics.record(null, TaskPriority.NORMAL, 0, 1000);
+		metrics.record(null, TaskPriority.NORMAL, 0, 1000);
+		assertEquals(2, metrics.getStatistics().size());
+
+		// The plugin is disabled without its statistics being removed
+		WeakReference<Object> reference = new WeakReference<Object>(plugin);
+		plugin = null;
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		List<TaskStatistics> statistics = metrics.getStatistics();
+		assertEquals(1, statistics.size());
+		assertNull(statistics.get(0).getOwner());
+		assertEquals(2, statistics.get(0).getRunCount());
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a {@link TickTrace} against a {@link VirtualClock}.<br/>
+ * <br/>
+ * Each tick walks {@link TickStage} through every stage, with a {@link TickStageProfiler} installed. Tasks recorded at
+ * {@link TickStage#TICKSTART} are queued on a {@link TimeSlicedTaskQueue}, so they are deferred under the sync task budget
+ * in the same way on every run. Tasks in other stages run in the order they were recorded.<br/>
+ * <br/>
+ * A task with a registered workload runs that workload, and the clock advances by its measured time. Any other task advances
+ * the clock by its recorded cost, so a replay without workloads produces identical timings every run.
+ */
+public class TickReplayer {
+	private static final int[] STAGES = {TickStage.STAGE1, TickStage.STAGE2P, TickStage.PHYSICS, TickStage.GLOBAL_PHYSICS, TickStage.DYNAMIC_BLOCKS,
+			TickStage.GLOBAL_DYNAMIC_BLOCKS, TickStage.LIGHTING, TickStage.FINALIZE, TickStage.PRESNAPSHOT, TickStage.SNAPSHOT};
+	private final TickTrace trace;
+	private final Map<String, Runnable> workloads = new HashMap<String, Runnable>();
+	private final Map<String, Histogram> taskTimes = new HashMap<String, Histogram>();
+	private long syncTaskBudget = 0;
+	private VirtualClock clock;
+
+	public TickReplayer(TickTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Sets the code to run for a traced task, in place of its recorded cost
+	 * 
+	 * @param name the name of the task
+	 * @param workload the code to run
+	 */
+	public void setWorkload(String name, Runnable workload) {
+		workloads.put(name, workload);
+	}
+
+	/**
+	 * Sets the time per tick for tasks recorded at {@link TickStage#TICKSTART}
+	 * 
+	 * @param budget the budget in ns, or 0 to run every task each tick
+	 */
+	public void setSyncTaskBudget(long budget) {
+		this.syncTaskBudget = budget;
+	}
+
+	/**
+	 * Gets the run times of a task in the last replay
+	 * 
+	 * @param name the name of the task
+	 * @return the run times in ns, or null if the task did not run
+	 */
+	public Histogram getTaskTimes(String name) {
+		return taskTimes.get(name);
+	}
+
+	/**
+	 * Replays the trace
+	 * 
+	 * @return the profiler holding the per stage timings
+	 */
+	public TickStageProfiler replay() {
+		clock = new VirtualClock();
+		taskTimes.clear();
+		TickStageProfiler profiler = new TickStageProfiler(clock);
+		TimeSlicedTaskQueue queue = new TimeSlicedTaskQueue(clock);
+		TickStageProfiler previousProfiler = TickStage.getProfiler();
+		int previousStage = TickStage.getStageInt();
+		TickStage.setProfiler(profiler);
+		try {
+			for (int tick = 0; tick < trace.getTickCount(); tick++) {
+				TickStage.setStage(TickStage.TICKSTART);
+				for (TickTrace.Entry entry : trace.getTick(tick)) {
+					if (entry.getStage() == TickStage.TICKSTART) {
+						queue.add(entry.getOwner(), createTask(entry), new TaskPriority(entry.getMaxDeferred()));
+					}
+				}
+				queue.runTick(syncTaskBudget <= 0 ? Long.MAX_VALUE : syncTaskBudget);
+				for (int stage : STAGES) {
+					TickStage.setStage(stage);
+					for (TickTrace.Entry entry : trace.getTick(tick)) {
+						if (entry.getStage() == stage) {
+							createTask(entry).run();
+						}
+					}
+				}
+			}
+			TickStage.setStage(TickStage.TICKSTART);
+		} finally {
+			TickStage.setProfiler(previousProfiler);
+			TickStage.setStage(previousStage);
+		}
+		return profiler;
+	}
+
+	private Runnable createTask(final TickTrace.Entry entry) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				long cost;
+				Runnable workload = workloads.get(entry.getName());
+				if (workload == null) {
+					cost = entry.getCost();
+				} else {
+					long start = System.nanoTime();
+					workload.run();
+					cost = System.nanoTime() - start;
+				}
+				clock.advance(cost);
+				Histogram times = taskTimes.get(entry.getName());
+				if (times == null) {
+					times = new Histogram();
+					taskTimes.put(entry.getName(), times);
+				}
+				times.record(cost);
+			}
+		};
+	}
+}
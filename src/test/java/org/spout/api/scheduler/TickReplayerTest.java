@@ -0,0 +1,115 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TickReplayerTest {
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private TickTrace createTrace() {
+		TickTrace trace = new TickTrace();
+		Random r = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			trace.beginTick();
+			trace.addTask(TickStage.TICKSTART, "pluginA", "sync", MS + r.nextInt((int) MS), TaskPriority.NORMAL.getMaxDeferred());
+			trace.addTask(TickStage.TICKSTART, "pluginB", "save", 5 * MS, TaskPriority.LOWEST.getMaxDeferred());
+			trace.addTask(TickStage.PHYSICS, "engine", "physics", 2 * MS + r.nextInt((int) MS), 0);
+			trace.addTask(TickStage.LIGHTING, "engine", "lighting", i % 50 == 0 ? 30 * MS : 3 * MS, 0);
+			trace.addTask(TickStage.SNAPSHOT, "engine", "snapshot", MS, 0);
+		}
+		return trace;
+	}
+
+	@Test
+	public void testTraceFormat() throws IOException {
+		TickTrace trace = createTrace();
+		StringWriter out = new StringWriter();
+		trace.write(out);
+		TickTrace read = TickTrace.read(new StringReader("# recorded trace\n" + out.toString()));
+		assertEquals(trace.getTickCount(), read.getTickCount());
+		TickTrace.Entry entry = read.getTick(10).get(3);
+		assertEquals(TickStage.LIGHTING, entry.getStage());
+		assertEquals("lighting", entry.getName());
+		assertEquals(trace.getTick(10).get(3).getCost(), entry.getCost());
+
+		StringWriter again = new StringWriter();
+		read.write(again);
+		assertEquals(out.toString(), again.toString());
+	}
+
+	@Test
+	public void testDeterministic() {
+		TickTrace trace = createTrace();
+		TickReplayer replayer = new TickReplayer(trace);
+		TickStageProfiler first = replayer.replay();
+		TickStageProfiler second = replayer.replay();
+
+		assertEquals(200, first.getTickCount());
+		assertEquals(first.getSummary(), second.getSummary());
+		assertEquals(first.getWorstTick().toString(), second.getWorstTick().toString());
+		assertEquals(30 * MS, first.getWorstTick().getStageTime(TickStage.LIGHTING));
+		assertEquals(200 * MS, first.getStageTimes(TickStage.SNAPSHOT).getTotal());
+		assertEquals(TickStage.TICKSTART, TickStage.getStageInt());
+	}
+
+	@Test
+	public void testBudget() {
+		TickReplayer replayer = new TickReplayer(createTrace());
+		long unbudgeted = replayer.replay().getStageTimes(TickStage.TICKSTART).getMax();
+		replayer.setSyncTaskBudget(2 * MS);
+		TickStageProfiler budgeted = replayer.replay();
+		// The save tasks are deferred until their deadline, rather than all running each tick
+		assertTrue(budgeted.getStageTimes(TickStage.TICKSTART).getPercentile(50) < unbudgeted);
+	}
+
+	@Test
+	public void testWorkload() {
+		TickReplayer replayer = new TickReplayer(createTrace());
+		final int[] runs = new int[1];
+		replayer.setWorkload("physics", new Runnable() {
+			@Override
+			public void run() {
+				runs[0]++;
+			}
+		});
+		TickStageProfiler profiler = replayer.replay();
+		assertEquals(200, runs[0]);
+		assertEquals(200, replayer.getTaskTimes("physics").getCount());
+		assertTrue(profiler.getStageTimes(TickStage.PHYSICS).getMax() < MS);
+		System.out.println("Replayed trace with physics workload:\n" + profiler.getSummary());
+	}
+}
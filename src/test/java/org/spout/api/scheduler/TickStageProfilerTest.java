@@ -0,0 +1,133 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TickStageProfilerTest {
+	private long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	private void runTick(long physics, long lighting, long snapshot) {
+		TickStage.setStage(TickStage.TICKSTART);
+		time += 10;
+		TickStage.setStage(TickStage.STAGE1);
+		time += 10;
+		TickStage.setStage(TickStage.PHYSICS);
+		time += physics;
+		TickStage.setStage(TickStage.LIGHTING);
+		time += lighting;
+		TickStage.setStage(TickStage.PHYSICS);
+		time += physics;
+		TickStage.setStage(TickStage.PRESNAPSHOT);
+		time += 10;
+		TickStage.setStage(TickStage.SNAPSHOT);
+		time += snapshot;
+	}
+
+	@Test
+	public void testStageTimes() {
+		TickStageProfiler profiler = new TickStageProfiler(clock);
+		TickStage.setStage(TickStage.FINALIZE);
+		TickStage.setProfiler(profiler);
+		try {
+			for (int i = 0; i < 99; i++) {
+				runTick(100, 1000, 50);
+			}
+			runTick(100, 50000, 50);
+			TickStage.setStage(TickStage.TICKSTART);
+		} finally {
+			TickStage.setProfiler(null);
+		}
+
+		assertEquals(100, profiler.getTickCount());
+		// Both physics stages in a tick are counted together
+		assertEquals(200L, profiler.getStageTimes(TickStage.PHYSICS).getMax());
+		assertEquals(100, profiler.getStageTimes(TickStage.LIGHTING).getCount());
+		assertEquals(50000L, profiler.getStageTimes(TickStage.LIGHTING).getMax());
+		long median = profiler.getStageTimes(TickStage.LIGHTING).getPercentile(50);
+		assertTrue(median >= 1000 && median <= 1125);
+		assertEquals(0, profiler.getStageTimes(TickStage.DYNAMIC_BLOCKS).getCount());
+
+		TickProfile worst = profiler.getWorstTick();
+		assertEquals(99, worst.getTick());
+		assertEquals(50000L, worst.getStageTime(TickStage.LIGHTING));
+		assertEquals(50280L, worst.getTotalTime());
+		assertEquals(1280L, profiler.getTickTimes().getMin());
+
+		profiler.reset();
+		assertNull(profiler.getWorstTick());
+		assertEquals(0, profiler.getTickTimes().getCount());
+	}
+
+	@Test
+	public void testInstalledAtTickStart() {
+		TickStageProfiler profiler = new TickStageProfiler(clock);
+		TickStage.setStage(TickStage.TICKSTART);
+		TickStage.setProfiler(profiler);
+		try {
+			// The stage is already TICKSTART, so the first tick starts with this transition
+			TickStage.setStage(TickStage.TICKSTART);
+			time += 10;
+			TickStage.setStage(TickStage.STAGE1);
+			time += 20;
+			TickStage.setStage(TickStage.TICKSTART);
+		} finally {
+			TickStage.setProfiler(null);
+		}
+
+		assertEquals(1, profiler.getTickCount());
+		assertEquals(30L, profiler.getWorstTick().getTotalTime());
+		assertEquals(20L, profiler.getWorstTick().getStageTime(TickStage.STAGE1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCombinedStages() {
+		new TickStageProfiler(clock).getStageTimes(TickStage.ALL_PHYSICS);
+	}
+
+	@Test
+	public void testSpeed() {
+		TickStageProfiler profiler = new TickStageProfiler();
+		int transitions = 1000000;
+		long start = System.nanoTime();
+		for (int i = 0; i < transitions; i++) {
+			profiler.stageChanged(i % 2 == 0 ? TickStage.TICKSTART : TickStage.STAGE1, i % 2 == 0 ? TickStage.STAGE1 : TickStage.TICKSTART);
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("Stage profiler overhead: " + (time / transitions) + "ns per transition");
+	}
+}
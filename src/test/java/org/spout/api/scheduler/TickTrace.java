@@ -0,0 +1,183 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded sequence of ticks, and the tasks run in each stage of each tick.<br/>
+ * <br/>
+ * Traces are stored as text, one entry per line:
+ * <pre>
+ * tick
+ * task &lt;stage&gt; &lt;owner&gt; &lt;name&gt; &lt;cost in ns&gt; &lt;max deferred in ms&gt;
+ * </pre>
+ * Lines starting with # are ignored.
+ */
+public class TickTrace {
+	private final List<List<Entry>> ticks = new ArrayList<List<Entry>>();
+
+	/**
+	 * Starts recording a new tick
+	 */
+	public void beginTick() {
+		ticks.add(new ArrayList<Entry>());
+	}
+
+	/**
+	 * Records a task in the current tick
+	 * 
+	 * @param stage the stage the task ran in
+	 * @param owner the name of the owner of the task
+	 * @param name the name of the task, used to find its workload when replaying
+	 * @param cost the time the task took, in ns
+	 * @param maxDeferred the max deferred time of the task's priority, in ms
+	 */
+	public void addTask(int stage, String owner, String name, long cost, long maxDeferred) {
+		if (ticks.isEmpty()) {
+			throw new IllegalStateException("No tick has been started");
+		}
+		TickStageProfiler.getIndex(stage);
+		ticks.get(ticks.size() - 1).add(new Entry(stage, owner, name, cost, maxDeferred));
+	}
+
+	/**
+	 * Gets the number of recorded ticks
+	 * 
+	 * @return the tick count
+	 */
+	public int getTickCount() {
+		return ticks.size();
+	}
+
+	/**
+	 * Gets the tasks recorded in a tick
+	 * 
+	 * @param tick the index of the tick
+	 * @return the tasks, in the order they were recorded
+	 */
+	public List<Entry> getTick(int tick) {
+		return Collections.unmodifiableList(ticks.get(tick));
+	}
+
+	/**
+	 * Writes the trace as text
+	 * 
+	 * @param writer to write to
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+		for (List<Entry> tick : ticks) {
+			writer.write("tick\n");
+			for (Entry e : tick) {
+				writer.write("task " + TickStage.getStage(e.stage) + " " + e.owner + " " + e.name + " " + e.cost + " " + e.maxDeferred + "\n");
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Reads a trace written by {@link #write(Writer)}
+	 * 
+	 * @param reader to read from
+	 * @return the trace
+	 * @throws IOException
+	 */
+	public static TickTrace read(Reader reader) throws IOException {
+		TickTrace trace = new TickTrace();
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] split = line.split(" ");
+			if (split[0].equals("tick") && split.length == 1) {
+				trace.beginTick();
+			} else if (split[0].equals("task") && split.length == 6) {
+				trace.addTask(getStage(split[1]), split[2], split[3], Long.parseLong(split[4]), Long.parseLong(split[5]));
+			} else {
+				throw new IOException("Invalid trace entry on line " + lineNumber + ": " + line);
+			}
+		}
+		return trace;
+	}
+
+	private static int getStage(String name) throws IOException {
+		for (int i = 0; i < 31; i++) {
+			if (TickStage.getStage(1 << i).equals(name)) {
+				return 1 << i;
+			}
+		}
+		throw new IOException("Unknown stage " + name);
+	}
+
+	public static class Entry {
+		private final int stage;
+		private final String owner;
+		private final String name;
+		private final long cost;
+		private final long maxDeferred;
+
+		public Entry(int stage, String owner, String name, long cost, long maxDeferred) {
+			this.stage = stage;
+			this.owner = owner;
+			this.name = name;
+			this.cost = cost;
+			this.maxDeferred = maxDeferred;
+		}
+
+		public int getStage() {
+			return stage;
+		}
+
+		public String getOwner() {
+			return owner;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCost() {
+			return cost;
+		}
+
+		public long getMaxDeferred() {
+			return maxDeferred;
+		}
+	}
+}
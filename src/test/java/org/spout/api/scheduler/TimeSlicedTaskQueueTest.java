@@ -0,0 +1,132 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeSlicedTaskQueueTest {
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+	private long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	@Test
+	public void testBudget() {
+		TimeSlicedTaskQueue queue = new TimeSlicedTaskQueue(clock);
+		final List<String> ran = new ArrayList<String>();
+		queue.add(this, new CostlyTask("low", 10 * MS, ran), TaskPriority.LOWEST);
+		queue.add(this, new CostlyTask("medium", 10 * MS, ran), TaskPriority.MEDIUM);
+		queue.add(this, new CostlyTask("critical", 10 * MS, ran), TaskPriority.CRITICAL);
+
+		// The critical task uses the whole budget, the others are deferred
+		assertEquals(1, queue.runTick(10 * MS));
+		assertEquals("critical", ran.get(0));
+		assertEquals(2, queue.getLastDeferredCount());
+
+		assertEquals(1, queue.runTick(10 * MS));
+		assertEquals("medium", ran.get(1));
+
+		// Once the deadline is reached, the task runs even without any budget
+		time += TimeUnit.MILLISECONDS.toNanos(TaskPriority.LOWEST.getMaxDeferred());
+		assertEquals(1, queue.runTick(0));
+		assertEquals("low", ran.get(2));
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testContinuation() {
+		TimeSlicedTaskQueue queue = new TimeSlicedTaskQueue(clock);
+		final int[] progress = new int[1];
+		queue.add(this, new TimeSlicedTask() {
+			@Override
+			public boolean runSlice(TickBudget budget) {
+				while (progress[0] < 100) {
+					if (budget.shouldYield()) {
+						return false;
+					}
+					progress[0]++;
+					time += MS;
+				}
+				return true;
+			}
+		}, TaskPriority.LOW);
+
+		assertEquals(0, queue.runTick(30 * MS));
+		assertEquals(30, progress[0]);
+		assertEquals(0, queue.runTick(30 * MS));
+		assertEquals(60, progress[0]);
+		assertEquals(1, queue.size());
+		assertEquals(0, queue.runTick(30 * MS));
+		assertEquals(1, queue.runTick(30 * MS));
+		assertEquals(100, progress[0]);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testCancel() {
+		TimeSlicedTaskQueue queue = new TimeSlicedTaskQueue(clock);
+		final List<String> ran = new ArrayList<String>();
+		Object owner = new Object();
+		queue.add(owner, new CostlyTask("cancelled", MS, ran), TaskPriority.NORMAL);
+		TimeSlicedTaskQueue.QueuedTask task = queue.add(this, new CostlyTask("single", MS, ran), TaskPriority.NORMAL);
+		queue.add(this, new CostlyTask("kept", MS, ran), TaskPriority.NORMAL);
+		queue.cancelTasks(owner);
+		task.cancel();
+		assertEquals(1, queue.runTick(100 * MS));
+		assertEquals(1, ran.size());
+		assertTrue(ran.contains("kept"));
+	}
+
+	private class CostlyTask implements Runnable {
+		private final String name;
+		private final long cost;
+		private final List<String> ran;
+
+		public CostlyTask(String name, long cost, List<String> ran) {
+			this.name = name;
+			this.cost = cost;
+			this.ran = ran;
+		}
+
+		@Override
+		public void run() {
+			time += cost;
+			ran.add(name);
+		}
+	}
+}
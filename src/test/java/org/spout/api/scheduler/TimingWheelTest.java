@@ -0,0 +1,211 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+	private static final int TIMERS = 100000;
+	private long time = 0;
+	private final SchedulerClock clock = new SchedulerClock() {
+		@Override
+		public long nanoTime() {
+			return time;
+		}
+	};
+
+	private void advanceMillis(long millis) {
+		time += TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Test
+	public void testDelayed() {
+		TimingWheel<String> wheel = new TimingWheel<String>(clock, 1);
+		wheel.schedule(1, "short", 10, 0);
+		wheel.schedule(2, "long", 100000, 0);
+		List<String> expired = new ArrayList<String>();
+
+		advanceMillis(9);
+		assertEquals(0, wheel.advance(expired));
+		advanceMillis(1);
+		assertEquals(1, wheel.advance(expired));
+		assertEquals("short", expired.get(0));
+		assertFalse(wheel.isScheduled(1));
+		assertTrue(wheel.isScheduled(2));
+
+		advanceMillis(100000 - 11);
+		assertEquals(0, wheel.advance(expired));
+		advanceMillis(1);
+		assertEquals(1, wheel.advance(expired));
+		assertEquals("long", expired.get(1));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testRepeating() {
+		TimingWheel<String> wheel = new TimingWheel<String>(clock, 50);
+		wheel.schedule(1, "repeat", 0, 100);
+		List<String> expired = new ArrayList<String>();
+
+		assertEquals(1, wheel.advance(expired));
+		for (int i = 0; i < 20; i++) {
+			advanceMillis(50);
+			wheel.advance(expired);
+		}
+		assertEquals(11, expired.size());
+
+		assertTrue(wheel.cancel(1));
+		assertFalse(wheel.cancel(1));
+		advanceMillis(1000);
+		assertEquals(0, wheel.advance(expired));
+	}
+
+	@Test
+	public void testRootSizePeriod() {
+		// A period of exactly one turn of the root wheel maps back to the slot being processed
+		TimingWheel<String> wheel = new TimingWheel<String>(clock, 1);
+		wheel.schedule(1, "repeat", 0, 256);
+		List<String> expired = new ArrayList<String>();
+
+		for (int tick = 0; tick <= 2048; tick++) {
+			int count = wheel.advance(expired);
+			assertEquals("Tick " + tick, tick % 256 == 0 ? 1 : 0, count);
+			advanceMillis(1);
+		}
+		assertEquals(9, expired.size());
+	}
+
+	@Test
+	public void testCancel() {
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(clock, 1);
+		for (int i = 0; i < 1000; i++) {
+			wheel.schedule(i, i, i * 20, 0);
+		}
+		for (int i = 0; i < 1000; i += 2) {
+			assertTrue(wheel.cancel(i));
+		}
+		assertEquals(500, wheel.size());
+		advanceMillis(20000);
+		List<Integer> expired = new ArrayList<Integer>();
+		assertEquals(500, wheel.advance(expired));
+		for (int i = 0; i < expired.size(); i++) {
+			assertEquals(i * 2 + 1, expired.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testOrdering() {
+		TimingWheel<Long> wheel = new TimingWheel<Long>(clock, 1);
+		Random r = new Random(1234);
+		for (int i = 0; i < 10000; i++) {
+			long delay = r.nextInt(1 << 22);
+			wheel.schedule(i, delay, delay, 0);
+		}
+		List<Long> expired = new ArrayList<Long>();
+		while (wheel.size() > 0) {
+			advanceMillis(r.nextInt(5000));
+			int start = expired.size();
+			wheel.advance(expired);
+			for (int i = start; i < expired.size(); i++) {
+				long delay = expired.get(i);
+				assertTrue(delay <= TimeUnit.NANOSECONDS.toMillis(time));
+				if (i > 0) {
+					assertTrue(delay >= expired.get(i - 1));
+				}
+			}
+		}
+		assertEquals(10000, expired.size());
+	}
+
+	@Test
+	public void testSpeed() {
+		Random r = new Random(5678);
+		long[] delays = new long[TIMERS];
+		for (int i = 0; i < TIMERS; i++) {
+			delays[i] = r.nextInt(10000);
+		}
+
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(clock, 1);
+		List<Integer> expired = new ArrayList<Integer>();
+		long start = System.nanoTime();
+		for (int i = 0; i < TIMERS; i++) {
+			wheel.schedule(i, i, delays[i], delays[i] + 1);
+		}
+		for (int i = 0; i < TIMERS; i += 4) {
+			wheel.cancel(i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			advanceMillis(50);
+			wheel.advance(expired);
+			expired.clear();
+		}
+		long wheelTime = System.nanoTime() - start;
+
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>(TIMERS, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+			}
+		});
+		long[][] timers = new long[TIMERS][];
+		start = System.nanoTime();
+		for (int i = 0; i < TIMERS; i++) {
+			timers[i] = new long[] {delays[i], delays[i] + 1};
+			queue.add(timers[i]);
+		}
+		// Removal from the queue is O(n), so cancelled timers are skipped when polled
+		for (int i = 0; i < TIMERS; i += 4) {
+			timers[i][1] = 0;
+		}
+		long now = 0;
+		for (int i = 0; i < 1000; i++) {
+			now += 50;
+			while (queue.peek()[0] <= now) {
+				long[] timer = queue.poll();
+				if (timer[1] > 0) {
+					timer[0] += timer[1];
+					queue.add(timer);
+				}
+			}
+		}
+		long queueTime = System.nanoTime() - start;
+
+		System.out.println("Timing wheel with " + TIMERS + " timers: " + (wheelTime / 1000000) + "ms");
+		System.out.println("Priority queue with " + TIMERS + " timers: " + (queueTime / 1000000) + "ms");
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.spout.api.geo.cuboid.Region;
+
+public class WorkStealingPoolTest {
+	private static final int TASKS = 10000;
+	private static final long SPLIT_THRESHOLD = 1000000L;
+	private static final long SLOW_TIME = 10 * SPLIT_THRESHOLD;
+	private static final long FAST_TIME = 1000L;
+
+	@Test
+	public void testInvokeAll() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("TestPool", 4);
+		final AtomicInteger counter = new AtomicInteger();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < TASKS; i++) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					counter.incrementAndGet();
+				}
+			});
+		}
+		tasks.add(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("Failing task");
+			}
+		});
+		for (int r = 0; r < 10; r++) {
+			pool.invokeAll(tasks);
+			assertEquals((r + 1) * TASKS, counter.get());
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testStealing() throws InterruptedException {
+		// With one worker, the worker takes the newest task first, which blocks until every other task is done
+		WorkStealingPool pool = new WorkStealingPool("TestPool", 1);
+		final AtomicInteger counter = new AtomicInteger();
+		final CountDownLatch others = new CountDownLatch(40);
+		final AtomicBoolean released = new AtomicBoolean();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < 40; i++) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					counter.incrementAndGet();
+					others.countDown();
+				}
+			});
+		}
+		tasks.add(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					released.set(others.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		pool.invokeAll(tasks);
+		// The other tasks can only complete if the calling thread steals them from the blocked worker
+		assertTrue(released.get());
+		assertEquals(40, counter.get());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testRegionExecution() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool("TestPool", 4);
+		ThreadClock clock = new ThreadClock();
+		RegionParallelExecutor executor = new RegionParallelExecutor(pool, SPLIT_THRESHOLD, clock);
+		Region slow = Mockito.mock(Region.class);
+		Region fast = Mockito.mock(Region.class);
+		TestRunnable runnable = new TestRunnable(slow, clock);
+
+		Map<Region, Long> times = executor.execute(runnable, null, Arrays.asList(slow, fast));
+		assertEquals(2, times.size());
+		assertEquals(SLOW_TIME, times.get(slow).longValue());
+		assertEquals(FAST_TIME, times.get(fast).longValue());
+		assertEquals(0, runnable.divisions.get());
+
+		// The slow region went over the threshold, so is divided across the pool on the next run
+		times = executor.execute(runnable, null, Arrays.asList(slow, fast));
+		assertEquals(1, runnable.divisions.get());
+		assertEquals(SLOW_TIME / 4, times.get(slow).longValue());
+		assertEquals(2, executor.getLastExecutionTimes().size());
+
+		// The slowest part times the part count is still over the threshold, so it stays divided
+		executor.execute(runnable, null, Arrays.asList(slow, fast));
+		assertEquals(2, runnable.divisions.get());
+
+		// Timings are kept per runnable class, so another runnable is not divided
+		TestRunnable other = new TestRunnable(slow, clock) {
+		};
+		executor.execute(other, null, Arrays.asList(slow, fast));
+		assertEquals(0, other.divisions.get());
+
+		// Once the region's work drops under the threshold, it goes back to a single part
+		runnable.slowTime.set(SPLIT_THRESHOLD / 2);
+		executor.execute(runnable, null, Arrays.asList(slow, fast));
+		assertEquals(3, runnable.divisions.get());
+		times = executor.execute(runnable, null, Arrays.asList(slow, fast));
+		assertEquals(3, runnable.divisions.get());
+		assertEquals(SPLIT_THRESHOLD / 2, times.get(slow).longValue());
+		pool.shutdown();
+	}
+
+	/**
+	 * A clock which only advances when told to, separately for each thread
+	 */
+	private static class ThreadClock implements SchedulerClock {
+		private final ThreadLocal<long[]> time = new ThreadLocal<long[]>() {
+			@Override
+			protected long[] initialValue() {
+				return new long[1];
+			}
+		};
+
+		@Override
+		public long nanoTime() {
+			return time.get()[0];
+		}
+
+		public void advance(long nanos) {
+			time.get()[0] += nanos;
+		}
+	}
+
+	/**
+	 * Reports a fixed cost for each region, split evenly between the parts of a divided region
+	 */
+	private static class TestRunnable implements DivisibleParallelRunnable {
+		private final Region slow;
+		private final ThreadClock clock;
+		private final AtomicInteger divisions = new AtomicInteger();
+		private final AtomicLong slowTime;
+
+		public TestRunnable(Region slow, ThreadClock clock) {
+			this(slow, clock, new AtomicLong(SLOW_TIME));
+		}
+
+		private TestRunnable(Region slow, ThreadClock clock, AtomicLong slowTime) {
+			this.slow = slow;
+			this.clock = clock;
+			this.slowTime = slowTime;
+		}
+
+		@Override
+		public void run() {
+		}
+
+		@Override
+		public ParallelRunnable newInstance(Region r, Task t) {
+			return createPart(r == slow ? slowTime.get() : FAST_TIME);
+		}
+
+		@Override
+		public ParallelRunnable[] divide(Region r, Task t, int parts) {
+			divisions.incrementAndGet();
+			ParallelRunnable[] runnables = new ParallelRunnable[parts];
+			for (int i = 0; i < parts; i++) {
+				runnables[i] = createPart((r == slow ? slowTime.get() : FAST_TIME) / parts);
+			}
+			return runnables;
+		}
+
+		private ParallelRunnable createPart(final long cost) {
+			return new TestRunnable(slow, clock, slowTime) {
+				@Override
+				public void run() {
+					clock.advance(cost);
+				}
+			};
+		}
+	}
+}